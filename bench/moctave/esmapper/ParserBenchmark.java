@@ -0,0 +1,253 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures how quickly data files are parsed.
+ *
+ * Each benchmark reports the bytes and nodes it got through as extra
+ * counters, so their scores come with MB/s and nodes/s figures. Run with
+ * {@code -prof gc} to see bytes allocated per operation; dividing that by
+ * the node counter's total gives bytes allocated per node.
+ *
+ * The sample files are generated in a temporary directory before each run:
+ * <ul>
+ * <li>{@code typical}: systems and planets, shaped like the game's map data.</li>
+ * <li>{@code descriptions}: planets with long quoted and backquoted descriptions.</li>
+ * <li>{@code nesting}: missions nested many tabs deep.</li>
+ * <li>{@code comments}: lines that are mostly or entirely comments.</li>
+ * <li>{@code config}: the bundled default config file, repeated.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+	@Param({"typical", "descriptions", "nesting", "comments", "config"})
+	public String shape;
+
+	// Roughly how big each generated file is, in kilobytes.
+	@Param({"64", "4096"})
+	public int size;
+
+	private File directory;
+	private File file;
+	private long fileSize;
+	private int nodeCount;
+
+	// The lines of the bundled default config, if they're needed.
+	private List<String> defaultConfig;
+
+	// The file's lines, for benchmarking makeNewNode on its own.
+	private char[][] lines;
+	private int[] lengths;
+
+	/** Extra counters, reported by JMH as rates per second. */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long bytes;
+		public long nodes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+			nodes = 0;
+		}
+	}
+
+	// Counts nodes without keeping them.
+	private static class CountingListener implements ParseListener {
+		private int nodes = 0;
+
+		@Override
+		public void beginNode(String name, int flag, int line) {
+			nodes++;
+		}
+
+		@Override
+		public void args(String[] args, int from, int to) {}
+
+		@Override
+		public void endNode() {}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("esmapper-bench").toFile();
+		file = new File(directory, shape + ".txt");
+
+		StringWriter text = new StringWriter();
+		PrintWriter out = new PrintWriter(text);
+		Random random = new Random(size);
+		for (int i = 0; text.getBuffer().length() < size * 1024; i++) {
+			writeDefinition(out, i, random);
+			out.flush();
+		}
+		Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+		fileSize = file.length();
+
+		List<String> fileLines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		lines = new char[fileLines.size()][];
+		lengths = new int[fileLines.size()];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = fileLines.get(i).toCharArray();
+			lengths[i] = lines[i].length;
+		}
+
+		CountingListener counter = new CountingListener();
+		new Parser(file, false, false).parse(counter);
+		nodeCount = counter.nodes;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		directory.delete();
+	}
+
+	/** Reads the file into a node tree, the way data files are normally read. */
+	@Benchmark
+	public List<Node> readNodes(Counters counters) {
+		counters.bytes += fileSize;
+		counters.nodes += nodeCount;
+		return new Parser(file, false, false).readNodes();
+	}
+
+	/** Reads the file without building a tree. */
+	@Benchmark
+	public int parseStreaming(Counters counters) {
+		CountingListener listener = new CountingListener();
+		new Parser(file, false, false).parse(listener);
+		counters.bytes += fileSize;
+		counters.nodes += listener.nodes;
+		return listener.nodes;
+	}
+
+	/** Splits lines that are already in memory into nodes. */
+	@Benchmark
+	public void makeNewNode(Counters counters, Blackhole blackhole) {
+		Parser parser = new Parser(file, false, false);
+		for (int i = 0; i < lines.length; i++) {
+			blackhole.consume(parser.makeNewNode(lines[i], lengths[i]));
+		}
+		counters.bytes += fileSize;
+		counters.nodes += nodeCount;
+	}
+
+	private void writeDefinition(PrintWriter out, int i, Random random) throws IOException {
+		if (shape.equals("typical")) {
+			out.printf("system \"System %d\"%n", i);
+			out.printf("\tpos %.2f %.2f%n", random.nextDouble() * 2000 - 1000, random.nextDouble() * 2000 - 1000);
+			out.println("\tgovernment Republic");
+			out.println("\tattributes core \"human space\"");
+			for (int link = 0; link < 3; link++) {
+				out.printf("\tlink \"System %d\"%n", random.nextInt(i + 1));
+			}
+			out.println("\thabitable 1250");
+			out.println("\tbelt 1466");
+			out.printf("\tminables iron %d 2.1%n", random.nextInt(20));
+			out.println("\ttrade Food 294");
+			out.println("\ttrade Clothing 311");
+			out.println("\tobject");
+			out.println("\t\tsprite star/g5");
+			out.println("\t\tperiod 10");
+			out.println("\tobject");
+			out.println("\t\tsprite planet/cloud3");
+			out.println("\t\tdistance 195.58");
+			out.println("\t\tperiod 59.9466");
+			out.printf("\t\tobject \"Planet %d\"%n", i);
+			out.println("\t\t\tsprite planet/rock7");
+			out.println("\t\t\tdistance 43");
+			out.println("\t\t\tperiod 15.7");
+			out.println();
+		} else if (shape.equals("descriptions")) {
+			out.printf("planet \"Planet %d\"%n", i);
+			out.println("\tattributes farming \"textiles\"");
+			for (int d = 0; d < 3; d++) {
+				out.printf(
+					"\tdescription `Planet %d is a \"quiet\" world of %d million people, whose farms "
+					+ "stretch from the icy poles almost to the equator. # Not a comment. Its shipyards "
+					+ "are small, but the spaceport is busy with freighters carrying grain, textiles and "
+					+ "the occasional crate of luxury goods off to the core worlds.`%n",
+					i,
+					random.nextInt(900)
+				);
+			}
+			out.println("\tspaceport \"The spaceport is a sprawl of concrete landing pads and low warehouses, "
+				+ "with a single bar that has seen better days.\"");
+			out.println("\tshipyard \"Basic Ships\"");
+			out.println("\toutfitter \"Common Outfits\"");
+			out.println();
+		} else if (shape.equals("nesting")) {
+			out.printf("mission \"Mission %d\"%n", i);
+			int depth = 16 + random.nextInt(16);
+			for (int d = 1; d <= depth; d++) {
+				String tabs = "\t".repeat(d);
+				out.printf("%sbranch \"level %d\"%n", tabs, d);
+				out.printf("%s\thas \"flag %d\"%n", tabs, random.nextInt(100));
+			}
+			for (int d = depth; d > 0; d--) {
+				out.printf("%saction%d%n", "\t".repeat(d), d);
+			}
+			out.println();
+		} else if (shape.equals("comments")) {
+			out.println("# This definition has more comments than data, like a lot of plugin files.");
+			out.println("# ---------------------------------------------------------------------");
+			out.printf("government \"Government %d\" # named after its founder%n", i);
+			out.println("\t# The color is used when painting maps by government.");
+			out.printf("\tcolor %.3f %.3f %.3f # roughly teal%n", random.nextDouble(), random.nextDouble(), random.nextDouble());
+			out.println("\t#swizzle 5");
+			out.println("\t\t# Indented comments are ignored too.");
+			out.println("\t\"display name\" \"Someone # with a hash\" # and a real comment");
+			out.println("#");
+			out.println();
+		} else {
+			if (defaultConfig == null)
+				defaultConfig = Files.readAllLines(new File("default config.txt").toPath(), StandardCharsets.UTF_8);
+			for (String line : defaultConfig) {
+				out.println(line);
+			}
+		}
+	}
+}
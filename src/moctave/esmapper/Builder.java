@@ -16,7 +16,6 @@ package moctave.esmapper;
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class Builder {
 	public static Node checkRemoval(Node node) {
@@ -60,7 +59,7 @@ public class Builder {
 		}
 
 		try {
-			return Integer.parseInt(args.get(0));
+			return node.getInt(0);
 		} catch (NumberFormatException e) {
 			Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_INT, parent, node);
 			return 0;
@@ -83,7 +82,7 @@ public class Builder {
 		}
 
 		try {
-			return Integer.parseInt(args.get(0));
+			return node.getInt(0);
 		} catch (NumberFormatException e) {
 			Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_INT, parent, node);
 			return def;
@@ -106,7 +105,7 @@ public class Builder {
 		}
 
 		try {
-			return Double.parseDouble(args.get(0));
+			return node.getDouble(0);
 		} catch (NumberFormatException e) {
 			Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_REAL, parent, node);
 			return 0;
@@ -129,14 +128,19 @@ public class Builder {
 		}
 
 		try {
-			return Double.parseDouble(args.get(0));
+			return node.getDouble(0);
 		} catch (NumberFormatException e) {
 			Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_REAL, parent, node);
 			return def;
 		}
 	}
 
-	public static void mapDouble(Node node, Map<String, Double> dest, String parent) {
+	/**
+	 * Sets or removes the values for the name given by a node's first
+	 * argument, taking as many of the remaining arguments as the table has
+	 * columns.
+	 */
+	public static void putDoubles(Node node, IndexedValues dest, String parent) {
 		List<String> args = node.getArgs();
 
 		if (args.size() < 2) {
@@ -149,46 +153,14 @@ public class Builder {
 		}
 
 		if (node.getFlag() == Node.REMOVE) {
-			try {
-				dest.remove(args.get(0));
-			} catch (NullPointerException e) {
-				Logger.nodeErr(Logger.ERROR_NULL_MAP_KEY, parent, node);
-			}
-		} else {
-			try {
-				dest.put(args.get(0), Double.parseDouble(args.get(1)));
-			} catch (NumberFormatException e) {
-				Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_REAL, parent, node);
-			}
-		}
-	}
-
-	public static void mapDoubleArray(Node node, Map<String, Double[]> dest, String parent) {
-		List<String> args = node.getArgs();
-
-		if (args.size() < 2) {
-			Logger.nodeErr(Logger.ERROR_INCOMPLETE_NODE, parent, node);
-			return;
-		}
-
-		if (args.size() > 2) {
-			Logger.nodeWarn(Logger.WARNING_EXTRA_ARGS, parent, node);
-		}
-
-		Double[] doubles = new Double[args.size() - 1];
-
-		if (node.getFlag() == Node.REMOVE) {
-			try {
-				dest.remove(args.get(0));
-			} catch (NullPointerException e) {
-				Logger.nodeErr(Logger.ERROR_NULL_MAP_KEY, parent, node);
-			}
+			dest.remove(dest.getRegistry().find(args.get(0)));
 		} else {
 			try {
+				double[] doubles = new double[Math.min(args.size() - 1, dest.getColumns())];
 				for (int i = 0; i < doubles.length; i++) {
-					doubles[i] = Double.parseDouble(args.get(i + 1));
+					doubles[i] = node.getDouble(i + 1);
 				}
-				dest.put(args.get(0), doubles);
+				dest.set(dest.getRegistry().getId(args.get(0)), doubles);
 			} catch (NumberFormatException e) {
 				Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_REAL, parent, node);
 			}
@@ -212,8 +184,8 @@ public class Builder {
 
 		try {
 			return new RectCoordinate(
-				Double.parseDouble(args.get(0)),
-				Double.parseDouble(args.get(1))
+				node.getDouble(0),
+				node.getDouble(1)
 			);
 		} catch (NumberFormatException e) {
 			Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_REAL, parent, node);
@@ -261,10 +233,10 @@ public class Builder {
 		if (args.size() >= 4) {
 			try {
 				color = new Color(
-					Float.parseFloat(args.get(0)),
-					Float.parseFloat(args.get(1)),
-					Float.parseFloat(args.get(2)),
-					Float.parseFloat(args.get(3))
+					node.getFloat(0),
+					node.getFloat(1),
+					node.getFloat(2),
+					node.getFloat(3)
 				);
 			} catch (NumberFormatException e) {
 				Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_REAL, parent, node);
@@ -272,9 +244,9 @@ public class Builder {
 		} else if (args.size() == 3) {
 			try {
 				color = new Color(
-					Float.parseFloat(args.get(0)),
-					Float.parseFloat(args.get(1)),
-					Float.parseFloat(args.get(2))
+					node.getFloat(0),
+					node.getFloat(1),
+					node.getFloat(2)
 				);
 			} catch (NumberFormatException e) {
 				Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_REAL, parent, node);
@@ -354,7 +326,8 @@ public class Builder {
 		if (node.getFlag() != Node.NORMAL)
 			Logger.nodeWarn(Logger.WARNING_WRONG_FLAG, parent, node);
 
-		return args;
+		// Node arguments can't be modified, so the list needs a copy of its own.
+		return new ArrayList<>(args);
 	}
 
 	public static String modifyDescription(
@@ -0,0 +1,138 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+/**
+ * A {@link LineReader} that decodes the UTF-8 bytes of a whole file, read
+ * into memory in one go, straight into the line buffer.
+ *
+ * The file is read into an ordinary array rather than memory-mapped. A
+ * mapped file can't be replaced on Windows until the mapping is garbage
+ * collected, and reading one that another program cuts short crashes the
+ * JVM, both of which happen as soon as data files are edited while
+ * watching them.
+ */
+public class ByteLineReader extends LineReader {
+	public ByteLineReader(byte[] bytes) {
+		this(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Reads part of a file's bytes, from the start of one line up to the
+	 * start of another. Several of these readers can share the same bytes.
+	 * @param start The index of the first byte to read.
+	 * @param end The index after the last byte to read.
+	 */
+	public ByteLineReader(byte[] bytes, int start, int end) {
+		this.bytes = bytes;
+		position = start;
+		limit = end;
+	}
+
+	/** Files bigger than this can't be read into one array. */
+	public static final long MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	/** Stands in for any bytes that aren't valid UTF-8. */
+	public static final char REPLACEMENT = '\uFFFD';
+
+	private byte[] bytes;
+	private int position = 0;
+	private int limit;
+
+	@Override
+	public boolean nextLine() {
+		length = 0;
+		if (position >= limit)
+			return false;
+
+		while (position < limit) {
+			int b = bytes[position++];
+			if (b == '\n')
+				return true;
+
+			if (b == '\r') {
+				if (position < limit && bytes[position] == '\n')
+					position++;
+				return true;
+			}
+
+			if (b >= 0) {
+				// Plain ASCII, by far the most common case.
+				append((char) b);
+			} else {
+				decode(b & 0xFF);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decodes a multi-byte UTF-8 sequence starting with the given byte.
+	 * Malformed sequences are replaced with U+FFFD, like a
+	 * {@link java.io.InputStreamReader} would.
+	 */
+	private void decode(int lead) {
+		int extra;
+		int codePoint;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			extra = 1;
+			codePoint = lead & 0x1F;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			extra = 2;
+			codePoint = lead & 0x0F;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			extra = 3;
+			codePoint = lead & 0x07;
+		} else {
+			append(REPLACEMENT);
+			return;
+		}
+
+		// Overlong and out of range sequences can be caught from the second
+		// byte, in which case only the first byte is replaced.
+		if (position < limit) {
+			int second = bytes[position] & 0xFF;
+			if (
+				(lead == 0xE0 && second < 0xA0)
+				|| (lead == 0xF0 && second < 0x90)
+				|| (lead == 0xF4 && second > 0x8F)
+			) {
+				append(REPLACEMENT);
+				return;
+			}
+		}
+
+		for (int i = 0; i < extra; i++) {
+			if (position >= limit || (bytes[position] & 0xC0) != 0x80) {
+				append(REPLACEMENT);
+				return;
+			}
+
+			codePoint = (codePoint << 6) | (bytes[position++] & 0x3F);
+		}
+
+		if (extra == 2 && Character.isSurrogate((char) codePoint)) {
+			append(REPLACEMENT);
+		} else if (extra == 3) {
+			append(Character.highSurrogate(codePoint));
+			append(Character.lowSurrogate(codePoint));
+		} else {
+			append((char) codePoint);
+		}
+	}
+
+	@Override
+	public void close() {}
+}
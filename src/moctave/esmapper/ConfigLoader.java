@@ -0,0 +1,107 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads a config file along with every file it extends.
+ *
+ * Each distinct file is read only once, no matter how many files extend it.
+ * As soon as a file has been read, the files it extends start being read in
+ * the background, so independent files are read at the same time. The nodes
+ * are then handed to {@link Main} in the same order as before: each file's
+ * nodes, with an extended file's nodes right after the {@code extends} node
+ * that first mentions it. Later mentions of a file are ignored, and so are
+ * mentions that would make a file extend itself.
+ */
+public class ConfigLoader {
+	// Files that have been read or are being read, by canonical path.
+	private Map<File, CompletableFuture<List<Node>>> files = new ConcurrentHashMap<>();
+
+	// Files whose nodes have already been handed to Main.
+	private Set<File> included = new HashSet<>();
+
+	// The chain of files that led to the file being included right now.
+	private Deque<File> including = new ArrayDeque<>();
+
+	/**
+	 * Loads a config file and everything it extends.
+	 */
+	public void load(File file) {
+		include(canonical(file), null);
+	}
+
+	/**
+	 * Hands a file's nodes to Main, including the files it extends.
+	 * @param name The name the file was extended by, or null for the first file.
+	 */
+	private void include(File file, String name) {
+		if (including.contains(file)) {
+			Logger.err("Circular extends: %s is already being loaded, ignoring it.", name);
+			return;
+		} else if (!included.add(file)) {
+			return;
+		}
+
+		if (name != null)
+			Logger.notify("Parsing extended config file %s.", name);
+
+		including.push(file);
+		for (Node node : read(file).join()) {
+			Main.addConfigNode(node);
+			if (node.getName().equals("extends")) {
+				for (String filename : node.getArgs()) {
+					include(canonical(new File(filename)), filename);
+				}
+			}
+		}
+		including.pop();
+	}
+
+	/**
+	 * Starts reading a file, unless that has already been done.
+	 */
+	private CompletableFuture<List<Node>> read(File file) {
+		return files.computeIfAbsent(file, f -> CompletableFuture.supplyAsync(() -> {
+			List<Node> nodes = new Parser(f, true, false).readNodes();
+			for (Node node : nodes) {
+				if (node.getName().equals("extends")) {
+					for (String filename : node.getArgs()) {
+						read(canonical(new File(filename)));
+					}
+				}
+			}
+			return nodes;
+		}));
+	}
+
+	// Different paths to the same file should count as the same file.
+	private static File canonical(File file) {
+		try {
+			return file.getCanonicalFile();
+		} catch (IOException e) {
+			return file.getAbsoluteFile();
+		}
+	}
+}
@@ -24,6 +24,9 @@ import java.awt.Image;
 import java.awt.RenderingHints;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import javax.imageio.ImageIO;
@@ -73,6 +76,14 @@ public abstract class DrawnItem {
 		Logger.warn("No draw() method defined for %s %s.", getType(), name);
 	}
 
+	/**
+	 * Clears this item, so that it can be loaded and drawn again from scratch.
+	 * Items that keep anything besides their canvas should override this.
+	 */
+	public void reset() {
+		setupGraphics();
+	}
+
 	/**
 	 * Saves this DrawnItem to a file.
 	 * Usually doesn't need to be overriden.
@@ -107,14 +118,17 @@ public abstract class DrawnItem {
 	public boolean drawSprite(Sprite sprite, double x, double y, boolean measureFromImageCenter) {
 		BufferedImage img;
 		try {
-			File f = sprite.resolve();
+			Path f = sprite.resolve();
 			
 			if (f == null) {
 				Logger.err("Invalid image sprite: %s.", sprite);
 				return false;
 			}
 
-			img = ImageIO.read(f);
+			// Read through a stream, since the image might be inside a plugin archive.
+			try (InputStream in = Files.newInputStream(f)) {
+				img = ImageIO.read(in);
+			}
 			img.getScaledInstance(
 				(int) (img.getWidth() * sprite.getScale()),
 				(int) (img.getHeight() * sprite.getScale()),
@@ -83,27 +83,27 @@ public class Event {
 			}
 
 			if (node.getName().equals("galaxy")) {
-				map.getGalaxy(label).applyModifiers(node);
+				map.getModifiableGalaxy(label).applyModifiers(node);
 			} else if (node.getName().equals("government")) {
-				map.getGovernment(label).applyModifiers(node);
+				map.getModifiableGovernment(label).applyModifiers(node);
 			} else if (node.getName().equals("planet")) {
-				map.getPlanet(label).applyModifiers(node);
+				map.getModifiablePlanet(label).applyModifiers(node);
 			} else if (node.getName().equals("system")) {
-				map.getSystem(label).applyModifiers(node);
+				map.getModifiableSystem(label).applyModifiers(node);
 			} else if (node.getName().equals("wormhole")) {
-				map.getWormhole(label).applyModifiers(node);
+				map.getModifiableWormhole(label).applyModifiers(node);
 			}
 		}
 
 		// Links and unlinks are applied last
 		for (String link : linkMap.keySet()) {
-			map.getSystem(link).addHyperlink(linkMap.get(link));
-			map.getSystem(linkMap.get(link)).addHyperlink(link);
+			map.getModifiableSystem(link).addHyperlink(linkMap.get(link));
+			map.getModifiableSystem(linkMap.get(link)).addHyperlink(link);
 		}
 
 		for (String link : unlinkMap.keySet()) {
-			map.getSystem(link).removeHyperlink(linkMap.get(link));
-			map.getSystem(linkMap.get(link)).removeHyperlink(link);
+			map.getModifiableSystem(link).removeHyperlink(linkMap.get(link));
+			map.getModifiableSystem(linkMap.get(link)).removeHyperlink(link);
 		}
 
 		Logger.confirm(
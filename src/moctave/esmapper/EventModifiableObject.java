@@ -19,4 +19,10 @@ public interface EventModifiableObject {
 	 * flags on its children, as a set of modifiers which change.
 	 */
 	public void applyModifiers(Node node);
+
+	/**
+	 * Makes a copy of this object that modifiers can be applied to without
+	 * changing this one.
+	 */
+	public EventModifiableObject copy();
 }
@@ -15,11 +15,14 @@ package moctave.esmapper;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.FontMetrics;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class GalacticMap extends DrawnItem {
 	public static final String TYPE = "map";
@@ -70,13 +73,13 @@ public class GalacticMap extends DrawnItem {
 			(int) (size.getX() / 2 - center.getX()),
 			(int) (size.getY() / 2 - center.getY())
 		);
-
-		setupGraphics();
-		fillCanvas(Color.BLACK);
 	}
 
 	private boolean pluginsOnly = false;
 	private String[] paintMode = new String[]{"government"};
+
+	// The number of the commodity or minable being painted, if any.
+	private int paintId = -1;
 	private boolean includeHidden = false;
 	private boolean excludeShrouded = false;
 	private boolean includeUnmappableWormholes = false;
@@ -84,48 +87,106 @@ public class GalacticMap extends DrawnItem {
 
 	private List<String> events = new ArrayList<>();
 
-	// Defined objects for this map.
-	private Map<String, StarSystem> systems = new LinkedHashMap<>();
-	private Map<String, Galaxy> galaxies = new LinkedHashMap<>();
-	private Map<String, Government> governments = new LinkedHashMap<>();
-	private Map<String, Wormhole> wormholes = new LinkedHashMap<>();
-	private Map<String, Planet> planets = new LinkedHashMap<>();
+	// Defined objects for this map. They're shared with every other map
+	// drawing the same data, except for any that this map's events change.
+	private Universe.Layer<StarSystem> systems;
+	private Universe.Layer<Galaxy> galaxies;
+	private Universe.Layer<Government> governments;
+	private Universe.Layer<Wormhole> wormholes;
+	private Universe.Layer<Planet> planets;
+
+	// What the names used by systems and wormholes refer to in this map,
+	// worked out once all of its events have been applied.
+	private Map<StarSystem, SystemReferences> systemReferences;
+	private Map<Wormhole, List<StarSystem[]>> wormholeLinks;
+	private Government uninhabitedGovernment;
+
+	// How far past a system's name and circle, or a link's ends, anything
+	// drawn for them can reach, in pixels.
+	private static final double DRAWING_MARGIN = 4;
+
+	// How far from a wormhole link's first system its arrowhead can reach:
+	// the arrowhead's distance along the link, plus the length of its sides.
+	private static final double ARROW_REACH = 38 + 0.3 * (38 - 9.5) + DRAWING_MARGIN;
+
+	// Where each system and hyperlink that can be drawn is, so that only the
+	// ones on the canvas need to be drawn. Each system is followed by its
+	// links, in the order they are drawn.
+	private SpatialGrid drawnSystems;
+	private List<StarSystem> drawnSystemList;
+	private List<StarSystem> drawnLinkList;
+
+	private static class SystemReferences {
+		private Government government;
+		private List<StarSystem> links = new ArrayList<>();
+		private List<Planet> planets = new ArrayList<>();
+	}
 
 	@Override
 	public String getType() {
 		return "map";
 	}
 
+	// The canvas is made again when the map is next loaded.
+	@Override
+	public void reset() {
+		systems = null;
+		galaxies = null;
+		governments = null;
+		wormholes = null;
+		planets = null;
+		systemReferences = null;
+		wormholeLinks = null;
+		drawnSystems = null;
+		drawnSystemList = null;
+		drawnLinkList = null;
+		uninhabitedGovernment = null;
+	}
+
 	// Load the map data
 	@Override
 	public void load() {
 		long startTime = System.nanoTime();
 		Logger.notify("Setting up map-specific data...");
 
-		for (Node node : Main.getNodes()) {
-			if (!node.fromPlugin() && pluginsOnly)
-				continue;
+		// The canvas isn't made until now, so maps that are never drawn don't need one.
+		setupGraphics();
+		fillCanvas(Color.BLACK);
 
-			if (node.getName().equals("system")) {
-				addStarSystem(new StarSystem(node));
-			} else if (node.getName().equals("galaxy")) {
-				addGalaxy(new Galaxy(node));
-			} else if (node.getName().equals("government")) {
-				addGovernment(new Government(node));
-			} else if (node.getName().equals("wormhole")) {
-				addWormhole(new Wormhole(node));
-			} else if (node.getName().equals("planet")) {
-				addPlanet(new Planet(node));
-			}
-		}
+		// Start from where another map with the same first few events left off.
+		Universe universe = Main.getUniverse(pluginsOnly);
+		Universe.Snapshot snapshot = universe.findSnapshot(events);
+		systems = new Universe.Layer<>(universe.getSystems(), snapshot.getSystems());
+		galaxies = new Universe.Layer<>(universe.getGalaxies(), snapshot.getGalaxies());
+		governments = new Universe.Layer<>(universe.getGovernments(), snapshot.getGovernments());
+		wormholes = new Universe.Layer<>(universe.getWormholes(), snapshot.getWormholes());
+		planets = new Universe.Layer<>(universe.getPlanets(), snapshot.getPlanets());
 
 		Logger.notify("Applying events...");
+		int applied = snapshot.getEvents().size();
+		if (applied > 0)
+			Logger.notify("Reusing the first %d events from an earlier map.", applied);
 
-		for (String eventname : events) {
-			Event event = Main.getEvent(eventname);
+		for (int i = applied; i < events.size(); i++) {
+			Event event = Main.getEvent(events.get(i));
 			event.apply(this);
+
+			List<String> prefix = events.subList(0, i + 1);
+			if (Main.getEventCacheSize() > 0 && universe.isSharedPrefix(prefix)) {
+				universe.addSnapshot(new Universe.Snapshot(
+					new ArrayList<>(prefix),
+					systems.freeze(),
+					galaxies.freeze(),
+					governments.freeze(),
+					wormholes.freeze(),
+					planets.freeze()
+				));
+			}
 		}
 
+		resolveReferences();
+		indexDrawnSystems();
+
 		System.out.printf("Total governments: %d.%n", governments.size());
 		System.out.printf("Total galaxies: %d.%n", galaxies.size());
 		System.out.printf("Total systems: %d.%n", systems.size());
@@ -139,6 +200,136 @@ public class GalacticMap extends DrawnItem {
 		);
 	}
 
+	/**
+	 * Finds the governments, hyperlinked systems and planets that each
+	 * system refers to, and the systems that each wormhole links, so that
+	 * drawing doesn't have to look them up by name. Names that don't refer
+	 * to anything are warned about once each, and then left out.
+	 */
+	private void resolveReferences() {
+		systemReferences = new IdentityHashMap<>();
+		wormholeLinks = new IdentityHashMap<>();
+		Set<String> warned = new HashSet<>();
+
+		uninhabitedGovernment = governments.get("Uninhabited");
+		if (uninhabitedGovernment == null)
+			warnMissing(warned, "No government with name %s.", "Uninhabited");
+
+		for (StarSystem system : systems.values()) {
+			SystemReferences references = new SystemReferences();
+
+			// Systems without a government are drawn as uninhabited.
+			references.government = governments.get(system.getGovernment());
+			if (references.government == null) {
+				if (system.getGovernment() != null && !system.getGovernment().isEmpty())
+					warnMissing(warned, "No government with name %s, using Uninhabited instead.", system.getGovernment());
+				references.government = uninhabitedGovernment;
+			}
+
+			for (String link : system.getHyperlinks()) {
+				StarSystem linked = systems.get(link);
+				if (linked == null) {
+					warnMissing(warned, "No system with name %s.", link);
+				} else {
+					references.links.add(linked);
+				}
+			}
+
+			for (StellarObject obj : system.getAllNamedObjects()) {
+				Planet planet = planets.get(obj.getName());
+				if (planet == null) {
+					warnMissing(warned, "No planet with name %s.", obj.getName());
+				} else {
+					references.planets.add(planet);
+				}
+			}
+
+			systemReferences.put(system, references);
+		}
+
+		for (Wormhole wormhole : wormholes.values()) {
+			List<StarSystem[]> links = new ArrayList<>();
+			for (Map.Entry<String, String> link : wormhole.getLinks().entrySet()) {
+				StarSystem from = systems.get(link.getKey());
+				StarSystem to = systems.get(link.getValue());
+				if (from == null) {
+					warnMissing(warned, "No system with name %s.", link.getKey());
+				} else if (to == null) {
+					warnMissing(warned, "No system with name %s.", link.getValue());
+				} else {
+					links.add(new StarSystem[]{from, to});
+				}
+			}
+			wormholeLinks.put(wormhole, links);
+		}
+	}
+
+	/**
+	 * Works out the area each system and hyperlink covers when drawn.
+	 * Positions can't change once events have been applied, so this only
+	 * needs to be done once per load.
+	 */
+	private void indexDrawnSystems() {
+		drawnSystems = new SpatialGrid(256);
+		drawnSystemList = new ArrayList<>();
+		drawnLinkList = new ArrayList<>();
+		FontMetrics metrics = graphics.getFontMetrics();
+
+		for (StarSystem system : systems.values()) {
+			if (
+				(system.isHidden() && !includeHidden)
+				|| (system.isShrouded() && excludeShrouded)
+			)
+				continue;
+
+			// The name is drawn to the right of the circle.
+			double x = system.getX();
+			double y = system.getY();
+			drawnSystems.add(
+				x - 5 - DRAWING_MARGIN,
+				Math.min(y - 5, y + 6 - metrics.getAscent()) - DRAWING_MARGIN,
+				x + 10 + metrics.stringWidth(system.getName()) + DRAWING_MARGIN,
+				Math.max(y + 5, y + 6 + metrics.getDescent()) + DRAWING_MARGIN
+			);
+			drawnSystemList.add(system);
+			drawnLinkList.add(null);
+
+			for (StarSystem linked : systemReferences.get(system).links) {
+				if (isSamePosition(system, linked)) {
+					// A link between two systems in the same place has no
+					// direction, and ends up in the canvas's top left corner.
+					drawnSystems.add(-offset.getX(), -offset.getY(), -offset.getX(), -offset.getY());
+				} else {
+					drawnSystems.add(
+						Math.min(x, linked.getX()) - DRAWING_MARGIN,
+						Math.min(y, linked.getY()) - DRAWING_MARGIN,
+						Math.max(x, linked.getX()) + DRAWING_MARGIN,
+						Math.max(y, linked.getY()) + DRAWING_MARGIN
+					);
+				}
+				drawnSystemList.add(system);
+				drawnLinkList.add(linked);
+			}
+		}
+	}
+
+	// Whether any of an area, in game coordinates, is on the canvas.
+	private boolean isOnCanvas(double minX, double minY, double maxX, double maxY) {
+		return maxX >= -offset.getX()
+			&& maxY >= -offset.getY()
+			&& minX <= size.getX() - offset.getX()
+			&& minY <= size.getY() - offset.getY();
+	}
+
+	private static boolean isSamePosition(StarSystem sys1, StarSystem sys2) {
+		return sys1.getX() == sys2.getX() && sys1.getY() == sys2.getY();
+	}
+
+	private static void warnMissing(Set<String> warned, String message, String name) {
+		if (warned.add(message + name))
+			Logger.warn(message, name);
+	}
+
 	// Draw the map
 	@Override
 	public void draw() {
@@ -156,13 +347,41 @@ public class GalacticMap extends DrawnItem {
 			}
 		}
 
-		for (StarSystem system : systems.values()) {
-			if (
-				(!system.isHidden() || includeHidden)
-				&& !(system.isShrouded() && excludeShrouded)
-			)
-				drawSystem(system);
+		// Look the commodity or minable up once, rather than once per system.
+		// Looking it up doesn't add it to the registry, since maps can be
+		// drawn while other maps are being drawn.
+		if (paintMode[0].equals("trade")) {
+			paintId = Registry.COMMODITIES.find(paintMode[1]);
+			if (paintId < 0)
+				Logger.warn("No commodity with name %s.", paintMode[1]);
+		} else if (paintMode[0].equals("minables")) {
+			paintId = Registry.MINABLES.find(paintMode[1]);
+			if (paintId < 0)
+				Logger.warn("No minable with name %s.", paintMode[1]);
+		}
+
+		// Only draw the systems and links that reach the canvas, in the same
+		// order as if every one of them were drawn.
+		BitSet visible = drawnSystems.find(
+			-offset.getX(),
+			-offset.getY(),
+			size.getX() - offset.getX(),
+			size.getY() - offset.getY()
+		);
+		for (int i = visible.nextSetBit(0); i >= 0; i = visible.nextSetBit(i + 1)) {
+			StarSystem system = drawnSystemList.get(i);
+			StarSystem linked = drawnLinkList.get(i);
+			if (linked == null) {
+				drawSystemBody(system);
+			} else {
+				drawLink(system, linked);
+			}
 		}
+		Logger.notify(
+			"Drew %d of %d systems and links that could be on the map.",
+			visible.cardinality(),
+			drawnSystems.size()
+		);
 
 		for (Wormhole wormhole : wormholes.values()) {
 			if (wormhole.isMappable() || includeUnmappableWormholes)
@@ -179,7 +398,9 @@ public class GalacticMap extends DrawnItem {
 
 
 	// Map-specific drawing methods
-	public void drawSystem(StarSystem system) {
+
+	// Draws a system's name and circle, but not its links.
+	private void drawSystemBody(StarSystem system) {
 		drawString(
 			system.getName(),
 			system.getX() + 10,
@@ -193,22 +414,26 @@ public class GalacticMap extends DrawnItem {
 			system.getY() - 5,
 			10,
 			10,
-			selectColor(system, paintMode)
+			selectColor(system)
 		);
-
-		for (String link : system.getHyperlinks()) {
-			drawLink(system, getSystem(link));
-		}
 	}
 
 	public void drawWormhole(Wormhole wormhole) {
 		graphics.setStroke(new BasicStroke(1));
-		Map<String, String> done = new HashMap<>();
-		for (String key : wormhole.getLinks().keySet()) {
-			StarSystem sys1 = getSystem(key);
-
-			String val = wormhole.getLink(key);
-			StarSystem sys2 = getSystem(val);
+		Map<StarSystem, StarSystem> done = new IdentityHashMap<>();
+		for (StarSystem[] link : wormholeLinks.get(wormhole)) {
+			StarSystem sys1 = link[0];
+			StarSystem sys2 = link[1];
+
+			// The arrowhead is drawn a fixed distance from the first system,
+			// which can be past the second one on a short link.
+			if (!isSamePosition(sys1, sys2) && !isOnCanvas(
+				Math.min(sys1.getX(), sys2.getX()) - ARROW_REACH,
+				Math.min(sys1.getY(), sys2.getY()) - ARROW_REACH,
+				Math.max(sys1.getX(), sys2.getX()) + ARROW_REACH,
+				Math.max(sys1.getY(), sys2.getY()) + ARROW_REACH
+			))
+				continue;
 
 			double[] coords = offsetLineFromEndpoints(
 				sys1.getX(),
@@ -228,9 +453,7 @@ public class GalacticMap extends DrawnItem {
 			if (!includeUnmappableWormholes) {
 				boolean missingPlanet = true;
 
-				for (StellarObject obj : sys1.getAllNamedObjects()) {
-					Planet planet = getPlanet(obj.getName());
-
+				for (Planet planet : getNamedPlanets(sys1)) {
 					if (
 						planet.getWormhole() != null
 						&& planet.getWormhole().equals(wormhole.getName())
@@ -248,7 +471,7 @@ public class GalacticMap extends DrawnItem {
 
 
 			// Draw link
-			if (!(done.containsKey(val) && done.get(val).equals(key))) {
+			if (done.get(sys2) != sys1) {
 				drawLine(
 					coords[0],
 					coords[1],
@@ -257,7 +480,7 @@ public class GalacticMap extends DrawnItem {
 					wormhole.getDim()
 				);
 
-				done.put(key, val);
+				done.put(sys1, sys2);
 			}
 
 			// Draw arrow
@@ -336,34 +559,45 @@ public class GalacticMap extends DrawnItem {
 	}
 
 
-	public Color selectColor(StarSystem system, String[] paintMode) {
+	/**
+	 * Picks the color of a system's circle, according to this map's paint
+	 * mode. The commodity or minable being painted is looked up when the
+	 * map is drawn, and if there's no such thing every system is painted
+	 * as uninhabited.
+	 */
+	public Color selectColor(StarSystem system) {
 		if (!paintUninhabited() && system.isUninhabited(this))
-			return getGovernment("Uninhabited").getColor();
+			return uninhabitedGovernment.getColor();
+
+		if ((paintMode[0].equals("trade") || paintMode[0].equals("minables")) && paintId < 0)
+			return uninhabitedGovernment.getColor();
 
 		if (paintMode[0].equals("trade")) {
-			if (system.getCommodityPrice(paintMode[1]) == 0)
-				return getGovernment("Uninhabited").getColor();
+			double price = system.getCommodityPrice(paintId);
+			if (price == 0)
+				return uninhabitedGovernment.getColor();
 
 			return getGeneralColor(getScore(
-				system.getCommodityPrice(paintMode[1]),
-				Trade.getMinCommodityPrice(paintMode[1]),
-				Trade.getMaxCommodityPrice(paintMode[1])
+				price,
+				Trade.getMinCommodityPrice(paintId),
+				Trade.getMaxCommodityPrice(paintId)
 			));
 		}
 
 		if (paintMode[0].equals("minables")) {
-			if (system.getMinableCount(paintMode[1]) == 0)
-				return getGovernment("Uninhabited").getColor();
+			double count = system.getMinableCount(paintId);
+			if (count == 0)
+				return uninhabitedGovernment.getColor();
 
 			return getGeneralColor(getScore(
-				system.getMinableCount(paintMode[1]),
+				count,
 				1,
 				15
 			));
 		}
 
 		// Default is government paint
-		return getGovernment(system.getGovernment()).getColor();
+		return systemReferences.get(system).government.getColor();
 	}
 
 	public double getScore(double input, double min, double max) {
@@ -427,26 +661,6 @@ public class GalacticMap extends DrawnItem {
 
 
 
-	public void addStarSystem(StarSystem system) {
-		systems.put(system.getName(), system);
-	}
-
-	public void addGalaxy(Galaxy galaxy) {
-		galaxies.put(galaxy.getName(), galaxy);
-	}
-
-	public void addGovernment(Government government) {
-		governments.put(government.getName(), government);
-	}
-
-	public void addWormhole(Wormhole wormhole) {
-		wormholes.put(wormhole.getName(), wormhole);
-	}
-
-	public void addPlanet(Planet planet) {
-		planets.put(planet.getName(), planet);
-	}
-
 	public StarSystem getSystem(String key) {
 		StarSystem s = systems.get(key);
 
@@ -488,6 +702,14 @@ public class GalacticMap extends DrawnItem {
 		return w;
 	}
 
+	/**
+	 * @return The planets for each of a system's named objects that has one,
+	 * from the outermost inwards.
+	 */
+	public List<Planet> getNamedPlanets(StarSystem system) {
+		return systemReferences.get(system).planets;
+	}
+
 	public Planet getPlanet(String key) {
 		Planet p = planets.get(key);
 
@@ -497,4 +719,57 @@ public class GalacticMap extends DrawnItem {
 
 		return p;
 	}
+
+	// The objects returned by these can be changed without affecting any
+	// other map.
+	public StarSystem getModifiableSystem(String key) {
+		StarSystem s = systems.getModifiable(key);
+
+		if (s == null) {
+			Logger.warn("No system with name %s.", key);
+		}
+
+		return s;
+	}
+
+	public Galaxy getModifiableGalaxy(String key) {
+		Galaxy g = galaxies.getModifiable(key);
+
+		if (g == null) {
+			Logger.warn("No galaxy with name %s.", key);
+		}
+
+		return g;
+	}
+
+	public Government getModifiableGovernment(String key) {
+		Government g = governments.getModifiable(key);
+
+		if (g == null) {
+			Logger.warn("No government with name %s, using Uninhabited instead.", key);
+			g = governments.getModifiable("Uninhabited");
+		}
+
+		return g;
+	}
+
+	public Wormhole getModifiableWormhole(String key) {
+		Wormhole w = wormholes.getModifiable(key);
+
+		if (w == null) {
+			Logger.warn("No wormhole with name %s.", key);
+		}
+
+		return w;
+	}
+
+	public Planet getModifiablePlanet(String key) {
+		Planet p = planets.getModifiable(key);
+
+		if (p == null) {
+			Logger.warn("No planet with name %s.", key);
+		}
+
+		return p;
+	}
 }
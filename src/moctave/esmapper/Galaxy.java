@@ -13,7 +13,7 @@
 
 package moctave.esmapper;
 
-public class Galaxy implements EventModifiableObject {
+public class Galaxy implements EventModifiableObject, Cloneable {
 	public static final String TYPE = "galaxy";
 	public Galaxy(Node node) {
 
@@ -49,6 +49,15 @@ public class Galaxy implements EventModifiableObject {
 		}
 	}
 
+	@Override
+	public Galaxy copy() {
+		try {
+			return (Galaxy) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -15,7 +15,7 @@ package moctave.esmapper;
 
 import java.awt.Color;
 
-public class Government implements EventModifiableObject {
+public class Government implements EventModifiableObject, Cloneable {
 	public static final String TYPE = "government";
 	public Government(Node node) {
 
@@ -43,6 +43,15 @@ public class Government implements EventModifiableObject {
 		}
 	}
 
+	@Override
+	public Government copy() {
+		try {
+			return (Government) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
 	private String name;
 
 	private Color color = Color.WHITE;
@@ -0,0 +1,106 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.util.Arrays;
+
+/**
+ * A table of doubles for the names in a {@link Registry}, like the price of
+ * each commodity in a system, stored as one array per column and indexed by
+ * the names' numbers. Reading a value is just an array lookup, with no
+ * hashing or boxing.
+ */
+public class IndexedValues {
+	/**
+	 * @param columns How many values each name has.
+	 */
+	public IndexedValues(Registry registry, int columns) {
+		this.registry = registry;
+		this.values = new double[columns][0];
+	}
+
+	private Registry registry;
+
+	// The values by column, then by number. Names without values are NaN.
+	private double[][] values;
+
+	public Registry getRegistry() {
+		return registry;
+	}
+
+	public int getColumns() {
+		return values.length;
+	}
+
+	/**
+	 * @return Whether the name with the given number has values.
+	 */
+	public boolean has(int id) {
+		return id >= 0 && id < values[0].length && !Double.isNaN(values[0][id]);
+	}
+
+	/**
+	 * @return One of the values for the name with the given number, or 0 if
+	 * it has none.
+	 */
+	public double get(int id, int column) {
+		return has(id) ? values[column][id] : 0;
+	}
+
+	/**
+	 * Sets the values for the name with the given number. Missing values are
+	 * set to 0, and extra ones are ignored.
+	 */
+	public void set(int id, double[] row) {
+		if (id >= values[0].length) {
+			int length = Math.max(id + 1, registry.size());
+			for (int column = 0; column < values.length; column++) {
+				int oldLength = values[column].length;
+				values[column] = Arrays.copyOf(values[column], length);
+				Arrays.fill(values[column], oldLength, length, Double.NaN);
+			}
+		}
+
+		for (int column = 0; column < values.length; column++) {
+			values[column][id] = column < row.length ? row[column] : 0;
+		}
+	}
+
+	/**
+	 * Removes the values for the name with the given number, if it has any.
+	 */
+	public void remove(int id) {
+		if (id < 0 || id >= values[0].length)
+			return;
+
+		for (double[] column : values) {
+			column[id] = Double.NaN;
+		}
+	}
+
+	public void clear() {
+		values = new double[values.length][0];
+	}
+
+	/**
+	 * @return A table with the same values, which can be changed separately.
+	 */
+	public IndexedValues copy() {
+		IndexedValues copy = new IndexedValues(registry, values.length);
+		for (int column = 0; column < values.length; column++) {
+			copy.values[column] = values[column].clone();
+		}
+		return copy;
+	}
+}
@@ -53,8 +53,7 @@ public class Legend extends DrawnItem {
 			} else if (child.getName().equals("item")) {
 				try {
 					texts.add(args.get(0));
-					args.remove(0);
-					rings.add(args);
+					rings.add(new ArrayList<>(args.subList(1, args.size())));
 				} catch (IndexOutOfBoundsException e) {
 					Logger.nodeErr(Logger.ERROR_INCOMPLETE_NODE, TYPE, child);
 				}
@@ -67,7 +66,6 @@ public class Legend extends DrawnItem {
 		);
 
 		offset = new RectCoordinate();
-		setupGraphics();
 	}
 
 	private int alignment = ALIGN_LEFT;
@@ -80,9 +78,16 @@ public class Legend extends DrawnItem {
 		return "legend";
 	}
 
-	// Legends don't need any custom data to be loaded.
+	// Legends don't need any custom data to be loaded, just a canvas, which
+	// isn't made until now so that legends that are never drawn don't need one.
+	@Override
+	public void load() {
+		setupGraphics();
+	}
+
+	// The canvas is made again when the legend is next loaded.
 	@Override
-	public void load() {}
+	public void reset() {}
 
 	@Override
 	public void draw() {
@@ -0,0 +1,123 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a file one line at a time into a single reusable character buffer,
+ * rather than creating a new string for every line.
+ * Lines end at a line feed, a carriage return, or a carriage return followed
+ * by a line feed, just like {@link java.io.BufferedReader#readLine()}.
+ */
+public class LineReader implements Closeable {
+	public LineReader(Reader reader) {
+		this.reader = reader;
+		readBuffer = new char[8192];
+	}
+
+	/**
+	 * Used by subclasses that don't read from a {@link Reader}.
+	 * They must override {@link #nextLine()} and {@link #close()}.
+	 */
+	protected LineReader() {}
+
+	private Reader reader;
+
+	// Characters read from the reader but not yet handed out as lines.
+	private char[] readBuffer;
+	private int readPosition = 0;
+	private int readLimit = 0;
+
+	// Whether the last line ended with a carriage return, so that a line
+	// feed straight after it belongs to the same line break.
+	private boolean skipLineFeed = false;
+
+	// The current line.
+	protected char[] line = new char[256];
+	protected int length = 0;
+
+	/**
+	 * Moves on to the next line of the file.
+	 * @return False if the end of the file has been reached, true otherwise.
+	 */
+	public boolean nextLine() throws IOException {
+		length = 0;
+		boolean foundAny = false;
+
+		while (true) {
+			if (readPosition >= readLimit) {
+				readLimit = reader.read(readBuffer, 0, readBuffer.length);
+				readPosition = 0;
+
+				if (readLimit <= 0) {
+					readLimit = 0;
+					return foundAny;
+				}
+			}
+
+			char c = readBuffer[readPosition++];
+			if (skipLineFeed) {
+				skipLineFeed = false;
+				if (c == '\n')
+					continue;
+			}
+
+			foundAny = true;
+			if (c == '\n')
+				return true;
+
+			if (c == '\r') {
+				skipLineFeed = true;
+				return true;
+			}
+
+			append(c);
+		}
+	}
+
+	/**
+	 * Adds a character to the end of the current line, growing the line buffer
+	 * if necessary.
+	 */
+	protected void append(char c) {
+		if (length == line.length) {
+			char[] bigger = new char[line.length * 2];
+			System.arraycopy(line, 0, bigger, 0, length);
+			line = bigger;
+		}
+
+		line[length++] = c;
+	}
+
+	/**
+	 * Gets the buffer holding the current line. Only the first
+	 * {@link #getLength()} characters belong to it, and the buffer is
+	 * overwritten by the next call to {@link #nextLine()}.
+	 */
+	public char[] getLine() {
+		return line;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -14,14 +14,30 @@
 package moctave.esmapper;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.awt.image.BufferedImage;
 import java.awt.Color;
 import java.awt.Font;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import javax.imageio.ImageIO;
 
 public class Main {
@@ -74,16 +90,62 @@ public class Main {
 	private static List<Node> configNodes = new ArrayList<>();
 
 	private static List<Node> nodes = new ArrayList<>();
-	private static int totalNodeCount = 0;
+
+	// Every data file, in the order they are parsed, and the top-level nodes found in each.
+	private static List<Parser> dataFiles = new ArrayList<>();
+	private static Map<File, List<Node>> fileNodes = new HashMap<>();
+
+	// The top-level nodes of every data file, grouped by name.
+	private static NodeIndex nodeIndex = new NodeIndex(new ArrayList<>());
+
+	// The objects built from the data, with and without the game directory's,
+	// made when a map first needs them.
+	private static Map<Boolean, Universe> universes = new HashMap<>();
+
+	// How many changed objects can be kept to save maps from applying the
+	// same events over again.
+	private static int eventCacheSize = 50000;
+
+	// The data directories of the game and each plugin, in the same order.
+	private static List<File> dataDirectories = new ArrayList<>();
+	private static AtomicInteger totalNodeCount = new AtomicInteger();
 
 	private static String gameDir = "";
 	private static List<String> plugins = new ArrayList<>();
 
+	// How many threads to parse data files with. Zero means parsing is done serially.
+	private static int parseThreads = 0;
+
+	// How many threads to draw maps, legends and viewports with. Zero means
+	// they are drawn one after another.
+	private static int renderThreads = 0;
+
+	// Where parsed data files are cached, if anywhere.
+	private static ParseCache parseCache = null;
+
+	// Measurements of each parsed data file, if they're wanted.
+	private static ParseStats parseStats = null;
+
+	// Whether to keep running and redraw whenever a data file changes.
+	private static boolean watch = false;
+
+	// Whether to skip the contents of data definitions that no map uses.
+	private static boolean lazyParsing = false;
+
+	// The names of top-level data nodes that are parsed in full, or null for all of them.
+	private static Set<String> wantedRoots = null;
+
 	// Graphical components.
 	private static Map<String, GalacticMap> maps = new LinkedHashMap<>();
 	private static Map<String, Legend> legends = new LinkedHashMap<>();
 	private static List<Viewport> viewports = new ArrayList<>();
 
+	// The maps and legends that some viewport shows, which are the only ones
+	// drawn unless unused ones should be rendered too.
+	private static List<GalacticMap> usedMaps = new ArrayList<>();
+	private static List<Legend> usedLegends = new ArrayList<>();
+	private static boolean renderUnused = false;
+
 	// All defined objects.
 	private static Map<String, Color> colors = new LinkedHashMap<>();
 	private static Map<String, Event> events = new LinkedHashMap<>();
@@ -91,20 +153,48 @@ public class Main {
 
 	public static void main(String[] args) {
 		System.out.println("Mapping Systems!");
-		if (args.length == 0) {
+
+		String configFile = null;
+		for (String arg : args) {
+			if (arg.equals("--watch")) {
+				watch = true;
+			} else if (configFile == null) {
+				configFile = arg;
+			}
+		}
+
+		if (configFile == null) {
 			Logger.err("No config file specified.");
 			System.exit(1);
 		}
 
 		Logger.notify("Loading config...");
-		Parser configParser = new Parser(new File(args[0]), true, false);
-		configParser.parse();
+		new ConfigLoader().load(new File(configFile));
 		loadConfig();
 
 		System.out.printf("Config loaded: %d top-level nodes found.%n", configNodes.size());
 
 		// Parse game data files
 		Logger.notify("Parsing data files...");
+		parseDataFiles();
+
+		System.out.printf("Parsing complete: %d top-level nodes found.%n", nodes.size());
+		System.out.printf("A total of %d nodes were parsed.%n", totalNodeCount.get());
+		if (parseStats != null)
+			parseStats.report();
+
+		setupGlobalData();
+		render(usedMaps, usedLegends, viewports);
+
+		if (watch) {
+			new Watcher(dataDirectories).run();
+		}
+	}
+
+	/**
+	 * Finds and parses every data file in the game directory and plugins.
+	 */
+	public static void parseDataFiles() {
 		List<String> paths = new ArrayList<>(plugins);
 		paths.add(0, gameDir);
 		System.out.println(paths);
@@ -115,58 +205,141 @@ public class Main {
 
 			dir += "data/";
 
-			if (path.equals(gameDir)) {
-				Logger.notify("Parsing vanilla Endless Sky");
-				examineFile(new File(dir), false);
-			} else {
+			boolean isPlugin = !path.equals(gameDir);
+			if (isPlugin) {
 				File f = new File(path);
 				Logger.notify("Parsing plugin (%s)", f.getName());
-				examineFile(new File(dir), true);
+			} else {
+				Logger.notify("Parsing vanilla Endless Sky");
+			}
+
+			if (PluginArchive.isArchive(path)) {
+				// Zip archives are read in place, and can't be watched for changes.
+				Path root = PluginArchive.getRoot(path);
+				if (root == null) {
+					dataDirectories.add(new File(dir));
+					continue;
+				}
+
+				Path dataDir = root.resolve("data");
+				dataDirectories.add(PluginArchive.toFile(dataDir));
+				for (Path file : examineArchive(dataDir)) {
+					dataFiles.add(new Parser(file, false, isPlugin));
+				}
+				continue;
+			}
+
+			dataDirectories.add(new File(dir));
+			List<File> files = new ArrayList<>();
+			examineFile(new File(dir), files);
+
+			// Files are sorted by path, so that the order in which they are
+			// parsed (and therefore overridden) doesn't depend on the file system.
+			Collections.sort(files);
+			for (File file : files) {
+				dataFiles.add(new Parser(file, false, isPlugin));
 			}
 		}
 
-		System.out.printf("Parsing complete: %d top-level nodes found.%n", nodes.size());
-		System.out.printf("A total of %d nodes were parsed.%n", totalNodeCount);
+		List<List<Node>> results = new ArrayList<>(Collections.nCopies(dataFiles.size(), null));
+		if (parseThreads > 0) {
+			Logger.notify("Parsing %d files on %d threads...", dataFiles.size(), parseThreads);
+			ForkJoinPool pool = new ForkJoinPool(parseThreads);
+			pool.invoke(new ParseTask(dataFiles, results, 0, dataFiles.size()));
+			pool.shutdown();
+		} else {
+			for (int i = 0; i < dataFiles.size(); i++) {
+				results.set(i, dataFiles.get(i).readNodes());
+			}
+		}
 
+		for (int i = 0; i < dataFiles.size(); i++) {
+			fileNodes.put(dataFiles.get(i).getFile(), results.get(i));
+		}
+
+		rebuildNodes();
+	}
+
+	/**
+	 * Rebuilds the list of top-level nodes from each data file's nodes.
+	 */
+	private static void rebuildNodes() {
+		nodes.clear();
+		for (Parser parser : dataFiles) {
+			nodes.addAll(fileNodes.get(parser.getFile()));
+		}
+		nodeIndex = new NodeIndex(nodes);
+		synchronized (universes) {
+			universes.clear();
+		}
+	}
+
+	/**
+	 * Sets up colors, events, and trade data, which are shared by every map.
+	 */
+	public static void setupGlobalData() {
 		Logger.notify("Setting up global data...");
-		for (Node node : nodes) {
-			if (node.getName().equals("color")) {
-				try {
-					if (node.getArgs().size() == 5) {
-						addColor(node.getArgs().get(0), new Color(
-							Float.parseFloat(node.getArgs().get(1)),
-							Float.parseFloat(node.getArgs().get(2)),
-							Float.parseFloat(node.getArgs().get(3)),
-							Float.parseFloat(node.getArgs().get(4))
-						));
-					} else {
-						addColor(node.getArgs().get(0), new Color(
-							Float.parseFloat(node.getArgs().get(1)),
-							Float.parseFloat(node.getArgs().get(2)),
-							Float.parseFloat(node.getArgs().get(3))
-						));
-					}
-				} catch (Exception e) {
-					Logger.nodeErr(Logger.ERROR_OBJECT_CREATION, "color", node);
-				}
-			} else if (node.getName().equals("event")) {
-				try {
-					events.put(node.getArgs().get(0), new Event(node));
-				} catch (IndexOutOfBoundsException e) {
-					Logger.nodeErr(Logger.ERROR_INCOMPLETE_NODE, "event", node);
+		colors.clear();
+		events.clear();
+		Trade.clear();
+
+		for (Node node : nodeIndex.get("color", false)) {
+			try {
+				if (node.getArgs().size() == 5) {
+					addColor(node.getArgs().get(0), new Color(
+						node.getFloat(1),
+						node.getFloat(2),
+						node.getFloat(3),
+						node.getFloat(4)
+					));
+				} else {
+					addColor(node.getArgs().get(0), new Color(
+						node.getFloat(1),
+						node.getFloat(2),
+						node.getFloat(3)
+					));
 				}
-			} else if (node.getName().equals("trade")) {
-				Trade.addTradeInfo(node);
+			} catch (Exception e) {
+				Logger.nodeErr(Logger.ERROR_OBJECT_CREATION, "color", node);
+			}
+		}
+
+		for (Node node : nodeIndex.get("event", false)) {
+			try {
+				events.put(node.getArgs().get(0), new Event(node));
+			} catch (IndexOutOfBoundsException e) {
+				Logger.nodeErr(Logger.ERROR_INCOMPLETE_NODE, "event", node);
 			}
 		}
+
+		for (Node node : nodeIndex.get("trade", false)) {
+			Trade.addTradeInfo(node);
+		}
+
 		System.out.printf("Total colors: %d.%n", colors.size());
+	}
 
-		for (GalacticMap map : maps.values()) {
+	/**
+	 * Loads and draws a set of maps, then draws a set of legends, and finally
+	 * draws and saves a set of viewports.
+	 */
+	public static void render(
+		Collection<GalacticMap> maps,
+		Collection<Legend> legends,
+		Collection<Viewport> viewports
+	) {
+		if (renderThreads > 0) {
+			renderInParallel(maps, legends, viewports);
+			return;
+		}
+
+		for (GalacticMap map : maps) {
 			map.load();
 			map.draw();
 		}
 
-		for (Legend legend : legends.values()) {
+		for (Legend legend : legends) {
+			legend.load();
 			legend.draw();
 		}
 
@@ -176,6 +349,216 @@ public class Main {
 		}
 	}
 
+	/**
+	 * Does the same as {@link #render}, but on several threads. Every map
+	 * and legend is drawn by a task of its own, and each viewport is drawn
+	 * and saved as soon as the maps and legends it shows are finished.
+	 */
+	private static void renderInParallel(
+		Collection<GalacticMap> maps,
+		Collection<Legend> legends,
+		Collection<Viewport> viewports
+	) {
+		Logger.notify("Rendering on %d threads...", renderThreads);
+		ExecutorService executor = Executors.newFixedThreadPool(renderThreads);
+
+		Map<DrawnItem, CompletableFuture<Void>> tasks = new HashMap<>();
+		for (GalacticMap map : maps) {
+			tasks.put(map, CompletableFuture.runAsync(() -> {
+				map.load();
+				map.draw();
+			}, executor));
+		}
+		for (Legend legend : legends) {
+			tasks.put(legend, CompletableFuture.runAsync(() -> {
+				legend.load();
+				legend.draw();
+			}, executor));
+		}
+
+		List<CompletableFuture<Void>> viewportTasks = new ArrayList<>();
+		for (Viewport viewport : viewports) {
+			// Maps and legends that aren't being drawn this time are already finished.
+			List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+			for (Node component : viewport.getComponents()) {
+				if (component.getArgs().isEmpty())
+					continue;
+
+				DrawnItem item = null;
+				if (component.getName().equals("map")) {
+					item = Main.maps.get(component.getArgs().get(0));
+				} else if (component.getName().equals("legend")) {
+					item = Main.legends.get(component.getArgs().get(0));
+				}
+
+				if (tasks.containsKey(item))
+					dependencies.add(tasks.get(item));
+			}
+
+			viewportTasks.add(CompletableFuture.allOf(
+				dependencies.toArray(new CompletableFuture<?>[dependencies.size()])
+			).thenRunAsync(() -> {
+				viewport.draw();
+				viewport.save(viewport.getFileFormat());
+			}, executor));
+		}
+
+		try {
+			CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture<?>[tasks.size()])).join();
+			CompletableFuture.allOf(viewportTasks.toArray(new CompletableFuture<?>[viewportTasks.size()])).join();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Parses a set of changed data files again, puts their new nodes in place
+	 * of the old ones, and redraws everything that could have been affected.
+	 * Files that no longer exist are dropped, and new files are parsed in the
+	 * same position they would have had if they had been there all along.
+	 * @param changed The data files that were created, modified, or deleted.
+	 */
+	public static void updateDataFiles(Set<File> changed) {
+		long startTime = System.nanoTime();
+		List<Node> touched = new ArrayList<>();
+		if (parseStats != null)
+			parseStats.clear();
+
+		for (File file : changed) {
+			int source = getDataSource(file);
+			if (source < 0)
+				continue;
+
+			Parser parser = null;
+			for (Parser p : dataFiles) {
+				if (p.getFile().equals(file)) {
+					parser = p;
+					break;
+				}
+			}
+
+			// Files inside plugin archives can't be checked with exists(), and
+			// aren't watched, so they never count as changed.
+			if (parser != null && PluginArchive.isInArchive(parser.getPath()))
+				continue;
+
+			if (parser != null) {
+				touched.addAll(fileNodes.remove(file));
+				if (!file.exists()) {
+					Logger.notify("Data file %s was removed.", file.getName());
+					dataFiles.remove(parser);
+					continue;
+				}
+			} else if (file.exists()) {
+				parser = new Parser(file, false, source > 0);
+				int i = 0;
+				while (i < dataFiles.size() && compareDataFiles(dataFiles.get(i).getFile(), file) < 0) {
+					i++;
+				}
+				dataFiles.add(i, parser);
+			} else {
+				continue;
+			}
+
+			Logger.notify("Parsing changed data file %s...", file.getName());
+			List<Node> roots = parser.readNodes();
+			fileNodes.put(file, roots);
+			touched.addAll(roots);
+		}
+
+		if (parseStats != null)
+			parseStats.report();
+
+		if (touched.isEmpty())
+			return;
+
+		rebuildNodes();
+		setupGlobalData();
+
+		// Work out what the changed nodes could have affected.
+		boolean colorsChanged = false;
+		boolean tradeChanged = false;
+		boolean vanillaUniverseChanged = false;
+		boolean pluginUniverseChanged = false;
+		Set<String> changedEvents = new HashSet<>();
+		for (Node node : touched) {
+			String name = node.getName();
+			if (name.equals("color")) {
+				colorsChanged = true;
+			} else if (name.equals("trade")) {
+				tradeChanged = true;
+			} else if (name.equals("event") && node.getArgs().size() > 0) {
+				changedEvents.add(node.getArgs().get(0));
+			} else if (
+				name.equals("system") || name.equals("planet") || name.equals("galaxy")
+				|| name.equals("government") || name.equals("wormhole")
+			) {
+				if (node.fromPlugin())
+					pluginUniverseChanged = true;
+				else
+					vanillaUniverseChanged = true;
+			}
+		}
+
+		List<GalacticMap> changedMaps = new ArrayList<>();
+		for (GalacticMap map : usedMaps) {
+			// Plugin-only maps ignore vanilla systems, but not vanilla events.
+			boolean affected = colorsChanged
+				|| pluginUniverseChanged
+				|| (vanillaUniverseChanged && !map.pluginsOnly())
+				|| (tradeChanged && map.getPaintMode()[0].equals("trade"));
+
+			for (String event : map.getEvents()) {
+				if (changedEvents.contains(event))
+					affected = true;
+			}
+
+			if (affected)
+				changedMaps.add(map);
+		}
+
+		List<Legend> changedLegends = new ArrayList<>();
+		if (colorsChanged)
+			changedLegends.addAll(usedLegends);
+
+		List<Viewport> changedViewports = new ArrayList<>();
+		for (Viewport viewport : viewports) {
+			boolean affected = colorsChanged;
+			for (Node component : viewport.getComponents()) {
+				if (component.getArgs().isEmpty())
+					continue;
+
+				String target = component.getArgs().get(0);
+				if (
+					(component.getName().equals("map") && changedMaps.contains(maps.get(target)))
+					|| (component.getName().equals("legend") && changedLegends.contains(legends.get(target)))
+				) {
+					affected = true;
+				}
+			}
+
+			if (affected)
+				changedViewports.add(viewport);
+		}
+
+		for (GalacticMap map : changedMaps)
+			map.reset();
+		for (Legend legend : changedLegends)
+			legend.reset();
+		for (Viewport viewport : changedViewports)
+			viewport.reset();
+
+		render(changedMaps, changedLegends, changedViewports);
+
+		Logger.confirm(
+			"Redrew %d maps, %d legends and %d viewports in %.3f seconds.",
+			changedMaps.size(),
+			changedLegends.size(),
+			changedViewports.size(),
+			Logger.getTimeSince(startTime)
+		);
+	}
+
 	public static void loadConfig() {
 		for (Node node : configNodes) {
 			if (node.getName().equals("event list")) {
@@ -201,6 +584,41 @@ public class Main {
 				} catch (IndexOutOfBoundsException e) {
 					Logger.nodeErr(Logger.ERROR_INCOMPLETE_NODE, "config", node);
 				}
+			} else if (node.getName().equals("parse cache")) {
+				if (node.getArgs().size() > 0) {
+					parseCache = new ParseCache(new File(node.getArgs().get(0)));
+				} else {
+					parseCache = new ParseCache(new File("cache/"));
+				}
+			} else if (node.getName().equals("parse stats")) {
+				int count = 10;
+				if (node.getArgs().size() > 0) {
+					try {
+						count = Integer.parseInt(node.getArgs().get(0));
+					} catch (NumberFormatException e) {
+						Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_INT, "config", node);
+					}
+				}
+				File csvFile = node.getArgs().size() > 1 ? new File(node.getArgs().get(1)) : null;
+				parseStats = new ParseStats(count, csvFile);
+			} else if (node.getName().equals("lazy parsing")) {
+				lazyParsing = true;
+			} else if (node.getName().equals("render unused")) {
+				renderUnused = true;
+			} else if (node.getName().equals("event cache")) {
+				eventCacheSize = Builder.asInt(node, "config", eventCacheSize);
+			} else if (node.getName().equals("render threads")) {
+				if (node.getArgs().size() > 0) {
+					renderThreads = Builder.asInt(node, "config", 0);
+				} else {
+					renderThreads = Runtime.getRuntime().availableProcessors();
+				}
+			} else if (node.getName().equals("parallel parsing")) {
+				if (node.getArgs().size() > 0) {
+					parseThreads = Builder.asInt(node, "config", 0);
+				} else {
+					parseThreads = Runtime.getRuntime().availableProcessors();
+				}
 			}
 		}
 
@@ -226,27 +644,163 @@ public class Main {
 				}
 			}
 		}
+
+		findUsedItems();
+
+		if (lazyParsing)
+			wantedRoots = findWantedRoots();
+	}
+
+	/**
+	 * Works out which maps and legends need to be drawn, which are the ones
+	 * shown by at least one viewport, unless every one should be drawn.
+	 */
+	private static void findUsedItems() {
+		Set<String> shownMaps = new HashSet<>();
+		Set<String> shownLegends = new HashSet<>();
+		for (Viewport viewport : viewports) {
+			for (Node component : viewport.getComponents()) {
+				if (component.getArgs().isEmpty())
+					continue;
+
+				if (component.getName().equals("map")) {
+					shownMaps.add(component.getArgs().get(0));
+				} else if (component.getName().equals("legend")) {
+					shownLegends.add(component.getArgs().get(0));
+				}
+			}
+		}
+
+		usedMaps.clear();
+		for (Map.Entry<String, GalacticMap> entry : maps.entrySet()) {
+			if (renderUnused || shownMaps.contains(entry.getKey()))
+				usedMaps.add(entry.getValue());
+		}
+
+		usedLegends.clear();
+		for (Map.Entry<String, Legend> entry : legends.entrySet()) {
+			if (renderUnused || shownLegends.contains(entry.getKey()))
+				usedLegends.add(entry.getValue());
+		}
+
+		int skipped = maps.size() + legends.size() - usedMaps.size() - usedLegends.size();
+		if (skipped > 0)
+			Logger.notify("Skipping %d maps and legends that no viewport shows.", skipped);
+	}
+
+	/**
+	 * Works out which top-level data nodes the configured maps can use.
+	 * Events and trade data are only needed if some map applies events or
+	 * is painted by commodity prices.
+	 */
+	private static Set<String> findWantedRoots() {
+		Set<String> wanted = new TreeSet<>(Arrays.asList(
+			"color",
+			"galaxy",
+			"government",
+			"planet",
+			"system",
+			"wormhole"
+		));
+
+		for (GalacticMap map : usedMaps) {
+			if (!map.getEvents().isEmpty())
+				wanted.add("event");
+			if (map.getPaintMode().length > 0 && map.getPaintMode()[0].equals("trade"))
+				wanted.add("trade");
+		}
+
+		return wanted;
+	}
+
+	/**
+	 * Finds which data directory a file belongs to.
+	 * @return 0 for the game directory, the plugin's position plus one for a
+	 * plugin, or -1 if the file isn't in any data directory.
+	 */
+	public static int getDataSource(File file) {
+		Path path = file.toPath().toAbsolutePath().normalize();
+		for (int i = 0; i < dataDirectories.size(); i++) {
+			if (path.startsWith(dataDirectories.get(i).toPath().toAbsolutePath().normalize()))
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Names the data directory a file belongs to, for reports.
+	 * @return "vanilla" for the game directory, the plugin's name for a
+	 * plugin, or "unknown" if the file isn't in any data directory.
+	 */
+	public static String getDataSourceName(File file) {
+		int source = getDataSource(file);
+		if (source < 0)
+			return "unknown";
+		else if (source == 0)
+			return "vanilla";
+
+		return new File(plugins.get(source - 1)).getName();
 	}
 
-	public static void examineFile(File file, boolean isPlugin) {
+	/**
+	 * Compares two data files by the order they should be parsed in:
+	 * first by which directory they belong to, then by path.
+	 */
+	private static int compareDataFiles(File f1, File f2) {
+		int bySource = Integer.compare(getDataSource(f1), getDataSource(f2));
+		if (bySource != 0)
+			return bySource;
+
+		return f1.compareTo(f2);
+	}
+
+	/**
+	 * Finds every data file in a directory, or the file itself if it isn't one.
+	 * @param file The file or directory to examine.
+	 * @param found The list that any .txt files are added to.
+	 */
+	public static void examineFile(File file, List<File> found) {
 		if (!file.exists()) {
 			Logger.err("File not found: %s.", file.getAbsolutePath());
 		}
 
 		if (file.getName().endsWith(".txt")) {
 			// Any .txt files are presumed to be text files, and so are parsed.
-			Parser p = new Parser(file, false, isPlugin);
-			p.parse();
+			found.add(file);
 		}
 
 		if (file.isDirectory()) {
-			// Every file in a directory is itself examined and/or parsed.
+			// Every file in a directory is itself examined.
 			for (File child : file.listFiles()) {
-				examineFile(child, isPlugin);
+				examineFile(child, found);
 			}
 		}
 	}
 
+	/**
+	 * Finds every data file in a directory inside a plugin archive.
+	 * @return The .txt files in the directory, sorted by path.
+	 */
+	public static List<Path> examineArchive(Path directory) {
+		List<Path> found = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			Logger.err("File not found: %s.", PluginArchive.toFile(directory).getPath());
+			return found;
+		}
+
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.filter(p -> p.getFileName() != null && p.getFileName().toString().endsWith(".txt"))
+				.filter(p -> Files.isRegularFile(p))
+				.sorted()
+				.forEach(found::add);
+		} catch (IOException e) {
+			Logger.err("Failed to read %s.", PluginArchive.toFile(directory).getPath());
+		}
+
+		return found;
+	}
+
 	public static void addNode(Node node) {
 		nodes.add(node);
 	}
@@ -255,12 +809,12 @@ public class Main {
 		configNodes.add(node);
 	}
 
-	public static void incrementTNC() {
-		totalNodeCount ++;
+	public static void addToTNC(int count) {
+		totalNodeCount.addAndGet(count);
 	}
 
 	public static int getTotalNodeCount() {
-		return totalNodeCount;
+		return totalNodeCount.get();
 	}
 
 	public static void addColor(String name, Color color) {
@@ -297,10 +851,66 @@ public class Main {
 		return plugins;
 	}
 
+	public static ParseCache getParseCache() {
+		return parseCache;
+	}
+
+	public static ParseStats getParseStats() {
+		return parseStats;
+	}
+
+	public static Set<String> getWantedRoots() {
+		return wantedRoots;
+	}
+
 	public static List<Node> getNodes() {
 		return nodes;
 	}
 
+	public static NodeIndex getNodeIndex() {
+		return nodeIndex;
+	}
+
+	public static int getEventCacheSize() {
+		return eventCacheSize;
+	}
+
+	/**
+	 * Gets the objects that maps are drawn from, building them the first
+	 * time they're needed. Every map with the same setting shares them.
+	 * @param pluginsOnly Whether to leave out the game directory's objects.
+	 */
+	public static Universe getUniverse(boolean pluginsOnly) {
+		synchronized (universes) {
+			Universe universe = universes.get(pluginsOnly);
+			if (universe == null) {
+				Logger.notify("Setting up map data shared by every%s map...", pluginsOnly ? " plugin-only" : "");
+				List<List<String>> eventLists = new ArrayList<>();
+				for (GalacticMap map : usedMaps) {
+					if (map.pluginsOnly() == pluginsOnly)
+						eventLists.add(map.getEvents());
+				}
+				universe = new Universe(nodeIndex, pluginsOnly, eventLists);
+				universes.put(pluginsOnly, universe);
+			}
+			return universe;
+		}
+	}
+
+	/**
+	 * @return Every data file that can change while running. Files inside
+	 * plugin archives are left out, since archives aren't watched.
+	 */
+	public static List<File> getDataFiles() {
+		List<File> files = new ArrayList<>();
+		for (Parser parser : dataFiles) {
+			if (!PluginArchive.isInArchive(parser.getPath()))
+				files.add(parser.getFile());
+		}
+
+		return files;
+	}
+
 	public static Legend getLegend(String key) {
 		Legend l = legends.get(key);
 
@@ -13,85 +13,154 @@
 
 package moctave.esmapper;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.List;
 
 import java.io.File;
 
-// A node on the data tree.
+/**
+ * A node on the data tree. Nodes are stored in a {@link NodeArena}, and this
+ * is only a view of one of them, so any number of views of the same node
+ * can exist and they are all equal.
+ */
 public class Node {
 	public static final int NORMAL = 0;
 	public static final int ADD = 1;
 	public static final int REMOVE = -1;
 
-	public Node(
-		String name,
-		int flag,
-		List<String> args,
-		List<Node> children,
-		int line,
-		File file,
-		boolean fromPlugin
-	) {
-		this.name = name;
-		this.flag = flag;
-		this.args = args;
-		this.children = children;
-		this.line = line;
-		this.file = file;
-		this.fromPlugin = fromPlugin;
-
-		Main.incrementTNC();
+	Node(NodeArena arena, int index) {
+		this.arena = arena;
+		this.index = index;
 	}
 
-	private String name;
-
-	private int flag = NORMAL;
-
-	private List<String> args;
-	private List<Node> children;
-	private boolean fromPlugin;
-
-	private int line;
-	private File file;
+	private final NodeArena arena;
+	private final int index;
 
 	public String toString() {
 		return String.format(
 			"Node{name: %s, args: %s, children: %d}",
-			name,
-			args.toString(),
-			children.size()
+			getName(),
+			getArgs().toString(),
+			getChildren().size()
 		);
 	}
 
-	public void addChild(Node child) {
-		children.add(child);
-	}
-
 	public String getName() {
-		return name;
+		return arena.getName(index);
 	}
 
 	public int getFlag() {
-		return flag;
+		return arena.getFlag(index);
 	}
 
+	/**
+	 * @return The node's arguments. The list can't be modified.
+	 */
 	public List<String> getArgs() {
-		return args;
+		return new Args(arena, arena.getArgOffset(index), arena.getArgCount(index));
+	}
+
+	/**
+	 * Reads an argument as a number. Each argument is only converted from
+	 * text once, however many times it's read.
+	 * @throws NumberFormatException If the argument isn't a number.
+	 */
+	public double getDouble(int i) {
+		int offset = getArgOffset(i);
+		return NumberParser.toDouble(arena.getNumber(offset), arena.getArg(offset));
+	}
+
+	/**
+	 * @see #getDouble(int)
+	 */
+	public float getFloat(int i) {
+		int offset = getArgOffset(i);
+		return NumberParser.toFloat(arena.getNumber(offset), arena.getArg(offset));
+	}
+
+	/**
+	 * @see #getDouble(int)
+	 */
+	public int getInt(int i) {
+		int offset = getArgOffset(i);
+		return NumberParser.toInt(arena.getNumber(offset), arena.getArg(offset));
 	}
 
+	private int getArgOffset(int i) {
+		int size = arena.getArgCount(index);
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+		return arena.getArgOffset(index) + i;
+	}
+
+	/**
+	 * @return A new list of the node's children.
+	 */
 	public List<Node> getChildren() {
+		List<Node> children = new ArrayList<>();
+		for (int child = arena.getFirstChild(index); child >= 0; child = arena.getNextSibling(child)) {
+			children.add(arena.get(child));
+		}
 		return children;
 	}
 
+	/**
+	 * @return The node this node belongs to, or null if it's a root node.
+	 */
+	public Node getParent() {
+		int parent = arena.getParent(index);
+		return parent < 0 ? null : arena.get(parent);
+	}
+
 	public boolean fromPlugin() {
-		return fromPlugin;
+		return arena.fromPlugin();
 	}
 
 	public int getLine() {
-		return line;
+		return arena.getLine(index);
 	}
 
 	public File getFile() {
-		return file;
+		return arena.getFile();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof Node))
+			return false;
+
+		Node node = (Node) other;
+		return arena == node.arena && index == node.index;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(arena) * 31 + index;
+	}
+
+	// A read-only window onto the arena's argument pool.
+	private static class Args extends AbstractList<String> {
+		Args(NodeArena arena, int offset, int size) {
+			this.arena = arena;
+			this.offset = offset;
+			this.size = size;
+		}
+
+		private final NodeArena arena;
+		private final int offset;
+		private final int size;
+
+		@Override
+		public String get(int i) {
+			if (i < 0 || i >= size)
+				throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+			return arena.getArg(offset + i);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
 	}
 }
@@ -0,0 +1,229 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stores every node read from one file in a handful of parallel arrays,
+ * instead of as separate objects. A node is just an index into the arrays,
+ * and {@link Node} objects are small views that are created when needed.
+ *
+ * Children are kept as a linked list through the first-child and
+ * next-sibling arrays. The arguments of all nodes are kept one after
+ * another in a single pool, in the order the nodes were added, so a node's
+ * arguments run from its own offset up to the next node's offset.
+ */
+public class NodeArena {
+	public NodeArena(File file, boolean fromPlugin, int expectedSize) {
+		this.file = file;
+		this.fromPlugin = fromPlugin;
+
+		int capacity = Math.max(expectedSize, 16);
+		names = new String[capacity];
+		flags = new byte[capacity];
+		lines = new int[capacity];
+		parents = new int[capacity];
+		firstChildren = new int[capacity];
+		lastChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		argOffsets = new int[capacity + 1];
+		argPool = new String[capacity * 2];
+	}
+
+	// Every node in the arena comes from this file.
+	private File file;
+	private boolean fromPlugin;
+
+	private int size = 0;
+
+	private String[] names;
+	private byte[] flags;
+	private int[] lines;
+
+	// Indices of related nodes, or -1 if there are none.
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] lastChildren;
+	private int[] nextSiblings;
+
+	// Node i's arguments are argPool[argOffsets[i]] to argPool[argOffsets[i + 1] - 1].
+	private int[] argOffsets;
+	private String[] argPool;
+	private int argCount = 0;
+
+	// Marks an argument that hasn't been decoded yet. NumberParser never
+	// decodes anything to this.
+	private static final long UNDECODED = Long.MIN_VALUE;
+
+	// Arguments decoded by NumberParser, each one the first time it's read
+	// as a number.
+	private volatile AtomicLongArray numbers;
+
+	/**
+	 * Adds a node to the arena, as the last child of its parent.
+	 * @param args An array holding the node's arguments.
+	 * @param from The index of the first argument in the array.
+	 * @param to The index after the last argument in the array.
+	 * @param parent The index of the node's parent, or -1 if it has none.
+	 * @return The index of the new node.
+	 */
+	public int add(String name, int flag, String[] args, int from, int to, int line, int parent) {
+		if (size == names.length)
+			grow();
+
+		int count = to - from;
+		if (argCount + count > argPool.length)
+			argPool = Arrays.copyOf(argPool, Math.max(argPool.length * 2, argCount + count));
+		System.arraycopy(args, from, argPool, argCount, count);
+
+		int index = size++;
+		names[index] = name;
+		flags[index] = (byte) flag;
+		lines[index] = line;
+		parents[index] = parent;
+		firstChildren[index] = -1;
+		lastChildren[index] = -1;
+		nextSiblings[index] = -1;
+		argOffsets[index] = argCount;
+		argCount += count;
+		argOffsets[size] = argCount;
+
+		if (parent >= 0) {
+			if (lastChildren[parent] < 0)
+				firstChildren[parent] = index;
+			else
+				nextSiblings[lastChildren[parent]] = index;
+			lastChildren[parent] = index;
+		}
+
+		return index;
+	}
+
+	private void grow() {
+		int capacity = names.length * 2;
+		names = Arrays.copyOf(names, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		lines = Arrays.copyOf(lines, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		firstChildren = Arrays.copyOf(firstChildren, capacity);
+		lastChildren = Arrays.copyOf(lastChildren, capacity);
+		nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		argOffsets = Arrays.copyOf(argOffsets, capacity + 1);
+	}
+
+	/**
+	 * Shrinks the arrays to fit once no more nodes will be added. The last
+	 * children are only needed while adding, so they are dropped entirely.
+	 */
+	public void trim() {
+		names = Arrays.copyOf(names, size);
+		flags = Arrays.copyOf(flags, size);
+		lines = Arrays.copyOf(lines, size);
+		parents = Arrays.copyOf(parents, size);
+		firstChildren = Arrays.copyOf(firstChildren, size);
+		nextSiblings = Arrays.copyOf(nextSiblings, size);
+		argOffsets = Arrays.copyOf(argOffsets, size + 1);
+		argPool = Arrays.copyOf(argPool, argCount);
+		lastChildren = null;
+	}
+
+	/**
+	 * Moves every node down the file by some number of lines, for nodes
+	 * that were read from part of a file as if it started on line one.
+	 */
+	void offsetLines(int offset) {
+		for (int i = 0; i < size; i++) {
+			lines[i] += offset;
+		}
+	}
+
+	public Node get(int index) {
+		return new Node(this, index);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean fromPlugin() {
+		return fromPlugin;
+	}
+
+	String getName(int index) {
+		return names[index];
+	}
+
+	int getFlag(int index) {
+		return flags[index];
+	}
+
+	int getLine(int index) {
+		return lines[index];
+	}
+
+	int getParent(int index) {
+		return parents[index];
+	}
+
+	int getFirstChild(int index) {
+		return firstChildren[index];
+	}
+
+	int getNextSibling(int index) {
+		return nextSiblings[index];
+	}
+
+	int getArgOffset(int index) {
+		return argOffsets[index];
+	}
+
+	int getArgCount(int index) {
+		return argOffsets[index + 1] - argOffsets[index];
+	}
+
+	String getArg(int offset) {
+		return argPool[offset];
+	}
+
+	/**
+	 * @return The argument at the given offset, decoded by {@link NumberParser}.
+	 */
+	long getNumber(int offset) {
+		AtomicLongArray decoded = numbers;
+		if (decoded == null || decoded.length() <= offset) {
+			// Threads that race to make the array just decode some arguments
+			// twice, since every decoding of an argument is the same.
+			AtomicLongArray bigger = new AtomicLongArray(argCount);
+			for (int i = 0; i < argCount; i++) {
+				bigger.set(i, decoded != null && i < decoded.length() ? decoded.get(i) : UNDECODED);
+			}
+			numbers = bigger;
+			decoded = bigger;
+		}
+
+		long number = decoded.get(offset);
+		if (number == UNDECODED) {
+			number = NumberParser.decode(argPool[offset]);
+			decoded.set(offset, number);
+		}
+		return number;
+	}
+}
@@ -0,0 +1,66 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top-level data nodes grouped by name, with vanilla and plugin nodes kept
+ * apart. Within each group, nodes stay in the order they were parsed in.
+ */
+public class NodeIndex {
+	public NodeIndex(List<Node> nodes) {
+		for (Node node : nodes) {
+			Map<String, List<Node>> group = node.fromPlugin() ? pluginNodes : vanillaNodes;
+			group.computeIfAbsent(node.getName(), k -> new ArrayList<>()).add(node);
+		}
+	}
+
+	private Map<String, List<Node>> vanillaNodes = new HashMap<>();
+	private Map<String, List<Node>> pluginNodes = new HashMap<>();
+
+	/**
+	 * Finds every top-level node with a given name.
+	 * @param name The name to look for.
+	 * @param pluginsOnly Whether to leave out nodes from the game directory.
+	 * @return The nodes, with vanilla nodes before plugin nodes, since that's
+	 * the order data files are parsed in.
+	 */
+	public List<Node> get(String name, boolean pluginsOnly) {
+		List<Node> plugin = getPlugin(name);
+		if (pluginsOnly)
+			return plugin;
+
+		List<Node> vanilla = getVanilla(name);
+		if (plugin.isEmpty())
+			return vanilla;
+
+		List<Node> all = new ArrayList<>(vanilla.size() + plugin.size());
+		all.addAll(vanilla);
+		all.addAll(plugin);
+		return all;
+	}
+
+	public List<Node> getVanilla(String name) {
+		return vanillaNodes.getOrDefault(name, Collections.emptyList());
+	}
+
+	public List<Node> getPlugin(String name) {
+		return pluginNodes.getOrDefault(name, Collections.emptyList());
+	}
+}
@@ -0,0 +1,93 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the nodes reported by a parser into a tree, stored in a {@link NodeArena}.
+ */
+public class NodeTreeBuilder implements ParseListener {
+	public NodeTreeBuilder(File file, boolean fromPlugin, int expectedSize) {
+		arena = new NodeArena(file, fromPlugin, expectedSize);
+	}
+
+	private NodeArena arena;
+	private List<Node> roots = new ArrayList<>();
+
+	// Nodes that were built by other builders and added to this one's roots.
+	private int appendedCount = 0;
+
+	// The arena indices of every node that has begun but not ended, outermost first.
+	private int[] openNodes = new int[16];
+	private int depth = 0;
+
+	// The node that has begun, but whose arguments haven't been reported yet.
+	private String name;
+	private int flag;
+	private int line;
+
+	@Override
+	public void beginNode(String name, int flag, int line) {
+		this.name = name;
+		this.flag = flag;
+		this.line = line;
+	}
+
+	@Override
+	public void args(String[] args, int from, int to) {
+		int parent = depth == 0 ? -1 : openNodes[depth - 1];
+		int index = arena.add(name, flag, args, from, to, line, parent);
+		if (parent < 0)
+			roots.add(arena.get(index));
+
+		if (depth == openNodes.length)
+			openNodes = Arrays.copyOf(openNodes, depth * 2);
+		openNodes[depth++] = index;
+	}
+
+	@Override
+	public void endNode() {
+		depth--;
+	}
+
+	/**
+	 * Finishes building the tree. No more nodes can be added afterwards.
+	 * @return The top-level nodes, in the order they were reported.
+	 */
+	public List<Node> finish() {
+		arena.trim();
+		return roots;
+	}
+
+	/**
+	 * Adds the trees built by another builder after this one's, for files
+	 * that were read in several pieces. The other builder is finished.
+	 * @param lineOffset How many lines of the file came before the other
+	 * builder's piece.
+	 */
+	public void append(NodeTreeBuilder piece, int lineOffset) {
+		List<Node> pieceRoots = piece.finish();
+		piece.arena.offsetLines(lineOffset);
+		roots.addAll(pieceRoots);
+		appendedCount += piece.getNodeCount();
+	}
+
+	public int getNodeCount() {
+		return arena.size() + appendedCount;
+	}
+}
@@ -0,0 +1,325 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An on-disk cache of parsed data files.
+ * Each data file gets its own cache file, holding the file's path, size,
+ * modification time and which top-level nodes were kept, followed by its
+ * node tree in a compact binary format.
+ * A cache file is only used if the size and modification time still match,
+ * so editing a data file automatically causes it to be parsed again.
+ */
+public class ParseCache {
+	public ParseCache(File directory) {
+		this.directory = directory;
+
+		if (!directory.exists() && !directory.mkdirs())
+			Logger.warn("Could not create parse cache directory %s.", directory.getAbsolutePath());
+	}
+
+	// "ESMC" in ASCII.
+	private static final int MAGIC = 0x45534D43;
+
+	/** Should be bumped whenever the format of cache files changes. */
+	private static final int VERSION = 3;
+
+	private File directory;
+
+	/**
+	 * Loads the nodes of a data file from the cache.
+	 * @param path Where the data file is read from.
+	 * @param file The data file, as its nodes should refer to it.
+	 * @param isPlugin Whether the data file belongs to a plugin.
+	 * @param wanted The names of top-level nodes that were kept, or null for all of them.
+	 * @return The top-level nodes of the file, or null if the file isn't
+	 * cached, has changed since it was, or was cached with other nodes kept.
+	 */
+	public List<Node> load(Path path, File file, boolean isPlugin, Set<String> wanted) {
+		File cacheFile = getCacheFile(path);
+		if (!cacheFile.exists())
+			return null;
+
+		long size;
+		long lastModified;
+		try {
+			size = Files.size(path);
+			lastModified = Files.getLastModifiedTime(path).toMillis();
+		} catch (IOException e) {
+			return null;
+		}
+
+		// The whole entry is read up front, so that every count in it can be
+		// checked against how much is left before anything is made that big.
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+			Files.readAllBytes(cacheFile.toPath())
+		))) {
+			if (
+				in.readInt() != MAGIC
+				|| in.readInt() != VERSION
+				|| !readString(in).equals(getKey(path))
+				|| in.readLong() != size
+				|| in.readLong() != lastModified
+				|| !readString(in).equals(describe(wanted))
+			) {
+				return null;
+			}
+
+			String[] strings = new String[readCount(in)];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = SymbolTable.intern(readString(in));
+			}
+
+			NodeArena arena = new NodeArena(file, isPlugin, readCount(in));
+			int rootCount = readCount(in);
+			List<Node> roots = new ArrayList<>(rootCount);
+			for (int i = 0; i < rootCount; i++) {
+				roots.add(arena.get(readNode(in, strings, arena, -1)));
+			}
+			arena.trim();
+			Main.addToTNC(arena.size());
+
+			return roots;
+		} catch (IOException | RuntimeException e) {
+			Logger.warn("Ignoring damaged parse cache entry for %s.", file.getName());
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the nodes of a data file to the cache, replacing anything that
+	 * was cached for it before.
+	 * @param path Where the data file was read from.
+	 * @param roots The top-level nodes of the file.
+	 * @param wanted The names of top-level nodes that were kept, or null for all of them.
+	 */
+	public void store(Path path, List<Node> roots, Set<String> wanted) {
+		// Every distinct string is written once, and then referred to by index.
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		int nodeCount = 0;
+		for (Node root : roots) {
+			nodeCount += collectStrings(root, strings);
+		}
+
+		File cacheFile = getCacheFile(path);
+		File tempFile = null;
+		try {
+			tempFile = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile)
+			))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, getKey(path));
+				out.writeLong(Files.size(path));
+				out.writeLong(Files.getLastModifiedTime(path).toMillis());
+				writeString(out, describe(wanted));
+
+				writeVarInt(out, strings.size());
+				for (String string : strings.keySet()) {
+					writeString(out, string);
+				}
+
+				writeVarInt(out, nodeCount);
+				writeVarInt(out, roots.size());
+				for (Node root : roots) {
+					writeNode(out, root, strings);
+				}
+			}
+
+			// Moving the finished file into place means that nobody ever reads
+			// a half-written cache file.
+			Files.move(
+				tempFile.toPath(),
+				cacheFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE
+			);
+		} catch (IOException e) {
+			Logger.warn("Could not write parse cache entry for %s.", path.getFileName());
+			if (tempFile != null)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Finds the cache file for a data file. Cache files are named after a
+	 * hash of the data file's path, which is also stored inside them in
+	 * case two paths ever share a hash.
+	 */
+	private File getCacheFile(Path dataFile) {
+		String key = getKey(dataFile);
+		String name;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 10; i++) {
+				sb.append(String.format("%02x", hash[i]));
+			}
+			name = sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			name = Integer.toHexString(key.hashCode());
+		}
+
+		return new File(directory, name + ".bin");
+	}
+
+	// Returns the number of nodes in this node's subtree.
+	private static int collectStrings(Node node, Map<String, Integer> strings) {
+		strings.putIfAbsent(node.getName(), strings.size());
+		for (String arg : node.getArgs()) {
+			strings.putIfAbsent(arg, strings.size());
+		}
+
+		int count = 1;
+		for (Node child : node.getChildren()) {
+			count += collectStrings(child, strings);
+		}
+		return count;
+	}
+
+	private static void writeNode(
+		DataOutputStream out,
+		Node node,
+		Map<String, Integer> strings
+	) throws IOException {
+		writeVarInt(out, strings.get(node.getName()));
+		out.writeByte(node.getFlag());
+		writeVarInt(out, node.getLine());
+
+		writeVarInt(out, node.getArgs().size());
+		for (String arg : node.getArgs()) {
+			writeVarInt(out, strings.get(arg));
+		}
+
+		writeVarInt(out, node.getChildren().size());
+		for (Node child : node.getChildren()) {
+			writeNode(out, child, strings);
+		}
+	}
+
+	private static int readNode(
+		DataInputStream in,
+		String[] strings,
+		NodeArena arena,
+		int parent
+	) throws IOException {
+		String name = strings[readVarInt(in)];
+		int flag = in.readByte();
+		int line = readVarInt(in);
+
+		String[] args = new String[readCount(in)];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = strings[readVarInt(in)];
+		}
+
+		int node = arena.add(name, flag, args, 0, args.length, line, parent);
+		int childCount = readCount(in);
+		for (int i = 0; i < childCount; i++) {
+			readNode(in, strings, arena, node);
+		}
+
+		return node;
+	}
+
+	/**
+	 * Names a data file uniquely. Files inside plugin archives are named by
+	 * their URI, which includes the archive's path.
+	 */
+	private static String getKey(Path path) {
+		if (PluginArchive.isInArchive(path))
+			return path.toUri().toString();
+
+		return path.toAbsolutePath().toString();
+	}
+
+	private static String describe(Set<String> wanted) {
+		if (wanted == null)
+			return "*";
+
+		// Sorted, so that the same set is always described the same way.
+		return String.join("\n", new TreeSet<>(wanted));
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readCount(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads how many of something follow. Each of them takes at least one
+	 * byte, so a damaged entry can't claim more of them than there are
+	 * bytes left.
+	 */
+	private static int readCount(DataInputStream in) throws IOException {
+		int count = readVarInt(in);
+		if (count < 0 || count > in.available())
+			throw new IOException("Malformed count in parse cache.");
+
+		return count;
+	}
+
+	/** Writes a non-negative integer in as few bytes as possible, 7 bits at a time. */
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			if (shift > 28)
+				throw new IOException("Malformed integer in parse cache.");
+
+			b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+}
@@ -0,0 +1,46 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+/**
+ * Receives the nodes of a file one at a time, as {@link Parser#parse(ParseListener)}
+ * reads them, so that nothing has to keep the whole tree in memory.
+ *
+ * Every node is reported by a call to {@link #beginNode}, then one call to
+ * {@link #args}, then the same calls for each of its children, and finally
+ * a call to {@link #endNode}.
+ */
+public interface ParseListener {
+	/**
+	 * Called when a node is found.
+	 * @param name The node's name.
+	 * @param flag {@link Node#NORMAL}, {@link Node#ADD} or {@link Node#REMOVE}.
+	 * @param line The line the node is on.
+	 */
+	void beginNode(String name, int flag, int line);
+
+	/**
+	 * Called right after {@link #beginNode}, even if the node has no arguments.
+	 * The array is reused for every line, so copy anything you want to keep.
+	 * @param args An array holding the node's arguments.
+	 * @param from The index of the first argument in the array.
+	 * @param to The index after the last argument in the array.
+	 */
+	void args(String[] args, int from, int to);
+
+	/**
+	 * Called once the node and all of its children have been reported.
+	 */
+	void endNode();
+}
@@ -0,0 +1,199 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records how much work went into parsing each data file, so that slow
+ * files and plugins can be found. Files can be parsed on any thread.
+ */
+public class ParseStats {
+	public ParseStats(int reportCount, File csvFile) {
+		this.reportCount = reportCount;
+		this.csvFile = csvFile;
+	}
+
+	// How many of the slowest files to list in the report.
+	private int reportCount;
+
+	// Where to write every file's numbers, or null to not write them anywhere.
+	private File csvFile;
+
+	private List<FileStats> files = new ArrayList<>();
+
+	/** The numbers for one data file. */
+	public static class FileStats {
+		private File file;
+		private boolean cached;
+		private long bytes;
+		private int lines;
+		private int nodes;
+		private long nanos;
+		// -1 if the JVM can't measure allocation.
+		private long allocated;
+	}
+
+	/**
+	 * Starts measuring the parsing of a file on the current thread.
+	 * @return A token to pass to {@link #record}.
+	 */
+	public static long[] start() {
+		return new long[] {System.nanoTime(), getAllocatedBytes()};
+	}
+
+	/**
+	 * Records a file that has just been parsed on the current thread.
+	 * @param start The token from {@link #start}.
+	 * @param cached Whether the file was loaded from the parse cache.
+	 * @param lines How many lines were read, which is zero for cached files.
+	 * @param nodes How many nodes were created.
+	 */
+	public void record(long[] start, File file, boolean cached, long bytes, int lines, int nodes) {
+		FileStats stats = new FileStats();
+		stats.nanos = System.nanoTime() - start[0];
+		long allocated = getAllocatedBytes();
+		stats.allocated = allocated < 0 || start[1] < 0 ? -1 : allocated - start[1];
+		stats.file = file;
+		stats.cached = cached;
+		stats.bytes = bytes;
+		stats.lines = lines;
+		stats.nodes = nodes;
+
+		synchronized (files) {
+			files.add(stats);
+		}
+	}
+
+	/**
+	 * Forgets every file recorded so far.
+	 */
+	public void clear() {
+		synchronized (files) {
+			files.clear();
+		}
+	}
+
+	/**
+	 * Prints the slowest files and the totals for each data source, and
+	 * writes every file's numbers to the CSV file, if there is one.
+	 */
+	public void report() {
+		List<FileStats> sorted;
+		synchronized (files) {
+			sorted = new ArrayList<>(files);
+		}
+		sorted.sort(Comparator.comparingLong((FileStats s) -> s.nanos).reversed());
+
+		Logger.notify("Slowest %d of %d data files:", Math.min(reportCount, sorted.size()), sorted.size());
+		for (FileStats stats : sorted.subList(0, Math.min(reportCount, sorted.size()))) {
+			System.out.printf(
+				"%10.3f ms %10d bytes %8d lines %8d nodes %12s allocated  %s%s%n",
+				stats.nanos / 1e6,
+				stats.bytes,
+				stats.lines,
+				stats.nodes,
+				stats.allocated < 0 ? "?" : Long.toString(stats.allocated),
+				Main.getDataSourceName(stats.file) + ": " + stats.file.getName(),
+				stats.cached ? " (cached)" : ""
+			);
+		}
+
+		Map<String, FileStats> sources = new LinkedHashMap<>();
+		Map<String, Integer> fileCounts = new LinkedHashMap<>();
+		for (FileStats stats : sorted) {
+			String source = Main.getDataSourceName(stats.file);
+			FileStats total = sources.computeIfAbsent(source, k -> new FileStats());
+			total.bytes += stats.bytes;
+			total.lines += stats.lines;
+			total.nodes += stats.nodes;
+			total.nanos += stats.nanos;
+			total.allocated = total.allocated < 0 || stats.allocated < 0 ? -1 : total.allocated + stats.allocated;
+			fileCounts.merge(source, 1, Integer::sum);
+		}
+
+		Logger.notify("Parse totals by source:");
+		for (Map.Entry<String, FileStats> entry : sources.entrySet()) {
+			FileStats total = entry.getValue();
+			System.out.printf(
+				"%10.3f ms %10d bytes %8d lines %8d nodes %12s allocated  %s (%d files)%n",
+				total.nanos / 1e6,
+				total.bytes,
+				total.lines,
+				total.nodes,
+				total.allocated < 0 ? "?" : Long.toString(total.allocated),
+				entry.getKey(),
+				fileCounts.get(entry.getKey())
+			);
+		}
+
+		if (csvFile != null)
+			writeCsv(sorted);
+	}
+
+	private void writeCsv(List<FileStats> sorted) {
+		try (PrintWriter out = new PrintWriter(csvFile, "UTF-8")) {
+			out.println("source,file,cached,bytes,lines,nodes,nanos,allocated");
+			for (FileStats stats : sorted) {
+				out.printf(
+					"%s,%s,%b,%d,%d,%d,%d,%d%n",
+					quote(Main.getDataSourceName(stats.file)),
+					quote(stats.file.getPath()),
+					stats.cached,
+					stats.bytes,
+					stats.lines,
+					stats.nodes,
+					stats.nanos,
+					stats.allocated
+				);
+			}
+		} catch (IOException e) {
+			Logger.err("Could not write parse stats to %s.", csvFile.getPath());
+		}
+	}
+
+	private static String quote(String value) {
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	// The bytes allocated by the current thread so far, or -1 if that can't be measured.
+	private static long getAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled())
+				return sunBean.getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+
+	/**
+	 * Counts the nodes in some trees.
+	 */
+	public static int countNodes(List<Node> nodes) {
+		int count = 0;
+		for (Node node : nodes) {
+			count += 1 + countNodes(node.getChildren());
+		}
+		return count;
+	}
+}
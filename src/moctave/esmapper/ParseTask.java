@@ -0,0 +1,59 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork-join task that reads a range of data files in parallel.
+ * The range is split in half until only one file is left. Each file's nodes
+ * are stored at the same index as its parser, so they can be put back
+ * together in exactly the order that parsing the files one after another
+ * would produce.
+ */
+public class ParseTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	public ParseTask(List<Parser> parsers, List<List<Node>> results, int start, int end) {
+		this.parsers = parsers;
+		this.results = results;
+		this.start = start;
+		this.end = end;
+	}
+
+	private List<Parser> parsers;
+	private List<List<Node>> results;
+	private int start;
+	private int end;
+
+	@Override
+	protected void compute() {
+		if (end - start == 1) {
+			Parser parser = parsers.get(start);
+			parser.setSplittable(true);
+			results.set(start, parser.readNodes());
+			return;
+		}
+
+		if (end <= start)
+			return;
+
+		int middle = (start + end) / 2;
+		invokeAll(
+			new ParseTask(parsers, results, start, middle),
+			new ParseTask(parsers, results, middle, end)
+		);
+	}
+}
@@ -15,11 +15,17 @@ package moctave.esmapper;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Scanner;
-import java.util.ArrayDeque;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 public class Parser {
 	public Parser (
@@ -28,138 +34,494 @@ public class Parser {
 		boolean isPlugin
 	) {
 		this.file = file;
+		this.path = file.toPath();
 		this.isConfig = isConfig;
 		this.isPlugin = isPlugin;
 	}
 
-	private Node currentNode;
+	/**
+	 * Makes a parser for a file that may be inside a plugin archive.
+	 */
+	public Parser (
+		Path path,
+		boolean isConfig,
+		boolean isPlugin
+	) {
+		this.file = PluginArchive.toFile(path);
+		this.path = path;
+		this.isConfig = isConfig;
+		this.isPlugin = isPlugin;
+	}
+
+	// Files are only split into pieces for parsing if each piece can be at
+	// least this many bytes.
+	private static final int PIECE_SIZE = 64 * 1024;
+
+	// Stands in for a node that was skipped, rather than reported.
+	private static final int SKIPPED = -2;
+
+	// Holds nodes made by makeNewNode, which don't belong to any file's tree.
+	private NodeArena looseNodes;
 	private int lineNumber = 0;
 
-	// The file to parse.
+	// The file to parse, and where to read it from. They're only different
+	// for files inside a plugin archive.
 	private File file;
+	private Path path;
 	
 	// True if the file is a config file, false if it's an ES datafile.
 	private boolean isConfig;
 	
 	private boolean isPlugin;
 
+	// Set by ParseTask, so files are only split up with "parallel parsing".
+	private boolean splittable = false;
+
+	// Reusable buffers for splitting lines into tokens.
+	private char[] lineBuffer = new char[256];
+	private String[] tokens = new String[16];
+	private int tokenCount = 0;
+
+	// The index of the name token on the current line, and the line's flag.
+	private int nameToken = 0;
+	private int flag = Node.NORMAL;
+	private SymbolTable symbols = new SymbolTable();
+
+	/**
+	 * Parses the file and hands every top-level node to {@link Main}, either
+	 * as a config node or as a data node. Config files are loaded through a
+	 * {@link ConfigLoader}, so that the files they extend are loaded too.
+	 */
 	public void parse() {
-		try {
-			Scanner s = new Scanner(file);
+		if (isConfig) {
+			new ConfigLoader().load(file);
+			return;
+		}
 
-			Deque<Node> nodeStack = new ArrayDeque<>();
+		for (Node node : readNodes()) {
+			Main.addNode(node);
+		}
+	}
+
+	/**
+	 * Reads the file into a tree of nodes without touching any global state,
+	 * so that several files can be read at once.
+	 * @return The top-level nodes of the file, in the order they appear.
+	 */
+	public List<Node> readNodes() {
+		ParseCache cache = isConfig ? null : Main.getParseCache();
+		Set<String> wanted = isConfig ? null : Main.getWantedRoots();
+		ParseStats stats = isConfig ? null : Main.getParseStats();
+		long[] start = stats == null ? null : ParseStats.start();
+		long size = getSize();
+
+		if (cache != null) {
+			List<Node> cached = cache.load(path, file, isPlugin, wanted);
+			if (cached != null) {
+				if (stats != null)
+					stats.record(start, file, true, size, 0, ParseStats.countNodes(cached));
+				return cached;
+			}
+		}
+
+		NodeTreeBuilder builder = new NodeTreeBuilder(file, isPlugin, (int) (size / 24));
+		boolean complete;
+		// The file is read once, and the same bytes are scanned and parsed.
+		byte[] bytes = readBytes(size);
+		int unwantedLines = RootScanner.WANTED;
+		if (wanted != null && bytes != null)
+			unwantedLines = RootScanner.countUnwantedLines(bytes, wanted);
+
+		if (unwantedLines != RootScanner.WANTED) {
+			// Nothing in the file would be kept, so don't bother parsing it.
+			lineNumber = unwantedLines;
+			complete = true;
+		} else if (bytes != null && canSplit(bytes.length)) {
+			complete = parseInPieces(bytes, builder);
+		} else {
+			complete = parse(bytes, builder);
+		}
+		List<Node> roots = builder.finish();
+		Main.addToTNC(builder.getNodeCount());
+
+		if (complete && cache != null)
+			cache.store(path, roots, wanted);
+
+		if (stats != null)
+			stats.record(start, file, false, size, lineNumber, builder.getNodeCount());
+
+		return roots;
+	}
+
+	/**
+	 * Reads the file, reporting each node to a listener as soon as it's
+	 * found, without building a tree.
+	 * If {@link Main#getWantedRoots()} gives a set of names, any other
+	 * top-level node is left out, and the lines inside it are skipped
+	 * without being split into tokens.
+	 * @return False if the file couldn't be read to the end, true otherwise.
+	 */
+	public boolean parse(ParseListener listener) {
+		return parse(readBytes(getSize()), listener);
+	}
+
+	/**
+	 * Parses the file like {@link #parse(ParseListener)} does.
+	 * @param bytes The file's contents, or null to read it through a stream.
+	 */
+	private boolean parse(byte[] bytes, ParseListener listener) {
+		try (LineReader reader = bytes == null ? openStream() : new ByteLineReader(bytes)) {
+			parse(reader, listener);
+		} catch (FileNotFoundException | NoSuchFileException e) {
+			Logger.err("No such file as %s.", file.getAbsolutePath());
+			return false;
+		} catch (IOException e) {
+			Logger.err("Failed to read %s.", file.getAbsolutePath());
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads lines until the reader runs out, reporting each node to a
+	 * listener. Line numbers start from one, wherever the reader starts.
+	 */
+	private void parse(LineReader reader, ParseListener listener) throws IOException {
+		Set<String> wanted = isConfig ? null : Main.getWantedRoots();
+		lineNumber = 0;
+
+		// Nodes are identified by the order they were found in.
+		int nodeCount = 0;
+
+		// Nodes that have begun but not ended, outermost first.
+		int[] openNodes = new int[16];
+		int openCount = 0;
+
+		try {
+			// The nodes that the current line could belong to.
+			int[] nodeStack = new int[16];
+			int depth = 0;
 
 			int tabs = 0;
 			int lastTabs = 0;
-			currentNode = null;
+			int currentNode = -1;
 
-			while (s.hasNextLine()) {
+			while (reader.nextLine()) {
 				lineNumber ++;
-				String line = s.nextLine();
-				tabs = countLeadingTabs(line);
-				if (tabs > lastTabs && currentNode != null) {
-					nodeStack.push(currentNode);
-				} else {
-					while (nodeStack.size() > tabs) {
-						nodeStack.pop();
-					}
+				char[] line = reader.getLine();
+				int length = reader.getLength();
+				tabs = countLeadingTabs(line, length);
+				if (tabs > lastTabs && currentNode != -1) {
+					if (depth == nodeStack.length)
+						nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+					nodeStack[depth++] = currentNode;
+				} else if (depth > tabs) {
+					depth = tabs;
 				}
-				currentNode = makeNewNode(line);
-
-				if (nodeStack.isEmpty() && currentNode != null) {
-					if (isConfig) {
-						Main.addConfigNode(currentNode);
-						if (currentNode.getName().equals("extends")) {
-							for (String filename : currentNode.getArgs()) {
-								Logger.notify("Parsing extended config file %s.", filename);
-								Parser parser = new Parser(new File(filename), true, false);
-								parser.parse();
-							}
-						}
-					} else {
-						Main.addNode(currentNode);
+
+				int parent = depth == 0 ? -1 : nodeStack[depth - 1];
+				if (parent == SKIPPED) {
+					// Anything inside a skipped node is skipped too, but still
+					// has to take part in working out the tree's shape.
+					currentNode = hasTokens(line, length) ? SKIPPED : -1;
+				} else if (!tokenize(line, length)) {
+					currentNode = -1;
+				} else if (parent == -1 && wanted != null && !wanted.contains(tokens[nameToken])) {
+					currentNode = SKIPPED;
+				} else {
+					// Any open nodes that this one isn't inside of are finished.
+					while (openCount > 0 && openNodes[openCount - 1] != parent) {
+						listener.endNode();
+						openCount--;
 					}
-				} else if (currentNode != null) {
-					nodeStack.peek().addChild(currentNode);
+
+					currentNode = nodeCount++;
+					if (openCount == openNodes.length)
+						openNodes = Arrays.copyOf(openNodes, openCount * 2);
+					openNodes[openCount++] = currentNode;
+
+					listener.beginNode(tokens[nameToken], flag, lineNumber);
+					listener.args(tokens, nameToken + 1, tokenCount);
 				}
 
 				lastTabs = tabs;
 			}
+		} finally {
+			while (openCount > 0) {
+				listener.endNode();
+				openCount--;
+			}
+		}
+	}
 
-			s.close();
-		} catch (FileNotFoundException e) {
-			Logger.err("No such file as %s.", file.getAbsolutePath());
+	/**
+	 * Whether the file is big enough to be worth splitting into pieces, and
+	 * the pieces can be parsed alongside other work in the parse pool.
+	 */
+	private boolean canSplit(long size) {
+		return splittable
+			&& !isConfig
+			&& size >= 2 * PIECE_SIZE
+			&& size <= ByteLineReader.MAX_SIZE
+			&& !PluginArchive.isInArchive(path)
+			&& ForkJoinTask.inForkJoinPool();
+	}
+
+	/**
+	 * Splits the file into pieces that are parsed at the same time, then
+	 * puts their nodes together, so that big files don't hold up everything
+	 * else. The result is exactly what parsing the file in one go gives.
+	 *
+	 * Each piece starts on a line that isn't indented. Such a line leaves
+	 * the parser in the same state however it got there, so a piece can be
+	 * parsed on its own as if it were a whole file, and only its line
+	 * numbers need to be moved along afterwards.
+	 * @param bytes The file's contents.
+	 * @param builder Gets the nodes of every piece, in order.
+	 * @return Always true, since the file has already been read.
+	 */
+	private boolean parseInPieces(byte[] bytes, NodeTreeBuilder builder) {
+		int parallelism = ForkJoinTask.getPool().getParallelism();
+		int[] bounds = findPieces(bytes, Math.max(PIECE_SIZE, bytes.length / parallelism));
+		int pieceCount = bounds.length - 1;
+
+		// The first piece goes straight into the builder, the rest into their own.
+		Parser[] parsers = new Parser[pieceCount];
+		NodeTreeBuilder[] builders = new NodeTreeBuilder[pieceCount];
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(pieceCount);
+		for (int i = 0; i < pieceCount; i++) {
+			int piece = i;
+			parsers[piece] = piece == 0 ? this : new Parser(path, isConfig, isPlugin);
+			builders[piece] = piece == 0 ? builder : new NodeTreeBuilder(
+				file,
+				isPlugin,
+				(bounds[piece + 1] - bounds[piece]) / 24
+			);
+			tasks.add(ForkJoinTask.adapt(() -> {
+				// Reading bytes that are already in memory can't fail part way through.
+				parsers[piece].parse(
+					new ByteLineReader(bytes, bounds[piece], bounds[piece + 1]),
+					builders[piece]
+				);
+				return null;
+			}));
+		}
+		ForkJoinTask.invokeAll(tasks);
+
+		int lines = parsers[0].lineNumber;
+		for (int i = 1; i < pieceCount; i++) {
+			builder.append(builders[i], lines);
+			lines += parsers[i].lineNumber;
+		}
+		lineNumber = lines;
+
+		return true;
+	}
+
+	/**
+	 * Finds where to split a file into pieces of roughly the given size.
+	 * Every piece begins on a line that doesn't start with a tab, and ends
+	 * just after a line feed or at the end of the file.
+	 * @return The index of each piece's first byte, followed by the size of the file.
+	 */
+	private static int[] findPieces(byte[] bytes, int pieceSize) {
+		int limit = bytes.length;
+		int[] bounds = new int[limit / pieceSize + 2];
+		int count = 1;
+
+		int position = pieceSize;
+		while (position < limit) {
+			// Look for the next line feed that isn't followed by a tab.
+			while (position < limit && (bytes[position - 1] != '\n' || bytes[position] == '\t')) {
+				position++;
+			}
+			if (position >= limit)
+				break;
+
+			bounds[count++] = position;
+			position += pieceSize;
+		}
+
+		bounds[count++] = limit;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	/**
+	 * Reads the whole file into memory, unless it is too big for that or is
+	 * inside a plugin archive.
+	 * @return The file's contents, or null if it has to be read through a
+	 * stream instead. Files that can't be read are left for the stream to
+	 * report.
+	 */
+	private byte[] readBytes(long size) {
+		if (PluginArchive.isInArchive(path) || size > ByteLineReader.MAX_SIZE)
+			return null;
+
+		try {
+			return Files.readAllBytes(path);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private LineReader openStream() throws IOException {
+		return new LineReader(new InputStreamReader(
+			Files.newInputStream(path),
+			StandardCharsets.UTF_8
+		));
+	}
+
+	private long getSize() {
+		try {
+			return Files.size(path);
+		} catch (IOException e) {
+			return 0;
 		}
 	}
 
 	public Node makeNewNode(String line) {
-		String trimmedLine = line.trim();
-		List<String> data = new ArrayList<>();
+		if (lineBuffer.length < line.length())
+			lineBuffer = new char[line.length()];
+
+		line.getChars(0, line.length(), lineBuffer, 0);
+		return makeNewNode(lineBuffer, line.length());
+	}
+
+	/**
+	 * Splits a line into a node, which is not part of any tree.
+	 * @param line A buffer holding the line.
+	 * @param length How many characters of the buffer belong to the line.
+	 * @return The node on this line, or null if the line has no tokens.
+	 */
+	public Node makeNewNode(char[] line, int length) {
+		if (!tokenize(line, length))
+			return null;
+
+		if (looseNodes == null)
+			looseNodes = new NodeArena(file, isPlugin, 16);
+
+		return looseNodes.get(looseNodes.add(
+			tokens[nameToken],
+			flag,
+			tokens,
+			nameToken + 1,
+			tokenCount,
+			lineNumber,
+			-1
+		));
+	}
+
+	/**
+	 * Splits a line into tokens, and works out which token is the node's
+	 * name and what its flag is. Tokens are looked up directly from the line
+	 * buffer in the symbol table, so repeated tokens don't create new strings.
+	 * @param line A buffer holding the line.
+	 * @param length How many characters of the buffer belong to the line.
+	 * @return False if the line has no tokens, true otherwise.
+	 */
+	private boolean tokenize(char[] line, int length) {
+		// Equivalent to String.trim(), without making a new string.
+		int start = 0;
+		int end = length;
+		while (start < end && line[start] <= ' ') {
+			start++;
+		}
+		while (end > start && line[end - 1] <= ' ') {
+			end--;
+		}
+
+		tokenCount = 0;
 		char splitOn = ' ';
-		String currentItem = "";
-		boolean isEmpty = true;
-		for (char c : trimmedLine.toCharArray()) {
-			if (isEmpty && c != ' ') {
-				isEmpty = false;
-				if (c == '"') {
-					// Item will end with a double quote, ignore this one.
-					splitOn = '"';
+		// Where the current item starts, or -1 if we're between items.
+		int itemStart = -1;
+		int itemEnd = end;
+		for (int i = start; i < end; i++) {
+			char c = line[i];
+			if (itemStart < 0) {
+				if (c == ' ')
 					continue;
-				} else if (c == '`') {
-					// Item will end with a backtick, ignore this one.
-					splitOn = '`';
+
+				if (c == '"' || c == '`') {
+					// Item will end with the same quote, ignore this one.
+					splitOn = c;
+					itemStart = i + 1;
 					continue;
-				} else {
-					// Item will end when the word it's in does.
-					splitOn = ' ';
 				}
-			} else if (isEmpty) {
-				continue;
-			}
 
+				// Item will end when the word it's in does.
+				splitOn = ' ';
+				itemStart = i;
+			}
 
 			if (c == splitOn) {
 				// Found end of item, add it to the list and start on the next one
-				data.add(currentItem);
-				currentItem = "";
-				isEmpty = true;
-				continue;
+				addToken(line, itemStart, i);
+				itemStart = -1;
 			} else if (c == '#' && splitOn == ' ') {
 				// Ignore everything after a comment
+				itemEnd = i;
 				break;
 			}
-
-			// Add to the current item
-			currentItem += c;
 		}
 
 		// Items can end at the end of the line, too
-		if (!currentItem.isEmpty()) {
-			data.add(currentItem);
+		if (itemStart >= 0 && itemEnd > itemStart) {
+			addToken(line, itemStart, itemEnd);
 		}
 
-		if (data.size() == 0)
-			return null;
+		if (tokenCount == 0)
+			return false;
 
 		// The first entry is the node name, everything else is args.
-		String nodeName = data.get(0);
-		data.remove(0);
-
-		int flag = Node.NORMAL;
+		nameToken = 0;
+		flag = Node.NORMAL;
 
 		// Check for flags
-		if (nodeName.equals("add")) {
-			flag = Node.ADD;
-			nodeName = data.get(0);
-			data.remove(0);
-		} else if (nodeName.equals("remove")) {
-			flag = Node.REMOVE;
-			nodeName = data.get(0);
-			data.remove(0);
+		if (tokenCount > 1) {
+			if (tokens[0].equals("add")) {
+				flag = Node.ADD;
+				nameToken = 1;
+			} else if (tokens[0].equals("remove")) {
+				flag = Node.REMOVE;
+				nameToken = 1;
+			}
 		}
 
+		return true;
+	}
+
+	/**
+	 * Checks whether a line would make a node, without splitting it into tokens.
+	 */
+	private static boolean hasTokens(char[] line, int length) {
+		int start = 0;
+		int end = length;
+		while (start < end && line[start] <= ' ') {
+			start++;
+		}
+		while (end > start && line[end - 1] <= ' ') {
+			end--;
+		}
+
+		if (start == end || line[start] == '#')
+			return false;
+
+		// A lone quote opens an item, but there's nothing left to put in it.
+		if (line[start] == '"' || line[start] == '`')
+			return end - start > 1;
+
+		return true;
+	}
+
+	private void addToken(char[] line, int start, int end) {
+		if (tokenCount == tokens.length) {
+			String[] bigger = new String[tokens.length * 2];
+			System.arraycopy(tokens, 0, bigger, 0, tokenCount);
+			tokens = bigger;
+		}
 
-		return new Node(nodeName, flag, data, new ArrayList<>(), lineNumber, file, isPlugin);
+		tokens[tokenCount++] = symbols.get(line, start, end);
 	}
 
 	public static String trimComments(String line) {
@@ -174,6 +536,14 @@ public class Parser {
 		return i;
 	}
 
+	public static int countLeadingTabs(char[] line, int length) {
+		int i = 0;
+		while (i < length && line[i] == '\t') {
+			i++;
+		}
+		return i;
+	}
+
 	public static boolean containsOnlyWhitespace(String line) {
 		// If the line is empty, for our purposes it's all whitespace.
 		if (line == null || line.isEmpty())
@@ -192,7 +562,24 @@ public class Parser {
 		return file;
 	}
 
+	public Path getPath() {
+		return path;
+	}
+
 	public boolean isConfig() {
 		return isConfig;
 	}
+
+	public boolean isPlugin() {
+		return isPlugin;
+	}
+
+	/**
+	 * Lets big files be split into pieces that are parsed at the same time.
+	 * Only for parsers run by a {@link ParseTask}, whose pool the pieces
+	 * are parsed in.
+	 */
+	public void setSplittable(boolean splittable) {
+		this.splittable = splittable;
+	}
 }
\ No newline at end of file
@@ -18,7 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Planet implements EventModifiableObject {
+public class Planet implements EventModifiableObject, Cloneable {
 	public static final String TYPE = "planet";
 	public Planet(Node node) {
 		// Names are optional for stellar objects.
@@ -34,6 +34,7 @@ public class Planet implements EventModifiableObject {
 
 			if (name.equals("attributes")) {
 				attributes = new ArrayList<>(args);
+				updateInhabited();
 			} else if (name.equals("landscape")) {
 				setLandscape(Builder.asSprite(child, TYPE));
 			} else if (name.equals("music")) {
@@ -61,14 +62,14 @@ public class Planet implements EventModifiableObject {
 			} else if (child.getName().equals("tribute")) {
 				try {
 					try {
-						setTributeValue(Integer.parseInt(args.get(0)));
+						setTributeValue(child.getInt(0));
 					} catch (NumberFormatException e) {
 						Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_INT, TYPE, child);
 					}
 					for (Node grand : child.getChildren()) {
 						if (grand.getName().equals("threshold")) {
 							try {
-								setTributeThreshold(Integer.parseInt(grand.getArgs().get(0)));
+								setTributeThreshold(grand.getInt(0));
 							} catch (NumberFormatException e) {
 								Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_INT, TYPE, grand);
 							}
@@ -76,7 +77,7 @@ public class Planet implements EventModifiableObject {
 							try {
 								addTributeFleet(
 									grand.getArgs().get(0),
-									Integer.parseInt(grand.getArgs().get(1))
+									grand.getInt(1)
 								);
 							} catch (Exception e) {
 								Logger.nodeErr(Logger.ERROR_OBJECT_CREATION, TYPE, grand);
@@ -111,6 +112,9 @@ public class Planet implements EventModifiableObject {
 
 	private String wormhole = null;
 
+	// Kept up to date whenever the attributes or wormhole change.
+	private boolean inhabited = true;
+
 	private int tributeValue = 0;
 	private int tributeThreshold = 4000;
 	private Map<String, Integer> tributeFleets = new HashMap<>();
@@ -123,6 +127,7 @@ public class Planet implements EventModifiableObject {
 		for (Node child : node.getChildren()) {
 			if (child.getName().equals("attributes")) {
 				attributes = Builder.modifyList(attributes, child, TYPE);
+				updateInhabited();
 			} else if (name.equals("landscape")) {
 				setLandscape(Builder.asSprite(child, TYPE));
 			} else if (name.equals("music")) {
@@ -159,14 +164,14 @@ public class Planet implements EventModifiableObject {
 				} else {
 					try {
 						try {
-							setTributeValue(Integer.parseInt(child.getArgs().get(0)));
+							setTributeValue(child.getInt(0));
 						} catch (NumberFormatException e) {
 							Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_INT, TYPE, child);
 						}
 						for (Node grand : child.getChildren()) {
 							if (grand.getName().equals("threshold")) {
 								try {
-									setTributeThreshold(Integer.parseInt(grand.getArgs().get(0)));
+									setTributeThreshold(grand.getInt(0));
 								} catch (NumberFormatException e) {
 									Logger.nodeErr(Logger.ERROR_NUMBER_FORMAT_INT, TYPE, grand);
 								}
@@ -174,7 +179,7 @@ public class Planet implements EventModifiableObject {
 								try {
 									addTributeFleet(
 										grand.getArgs().get(0),
-										Integer.parseInt(grand.getArgs().get(1))
+										grand.getInt(1)
 									);
 								} catch (Exception e) {
 									Logger.nodeErr(Logger.ERROR_OBJECT_CREATION, TYPE, grand);
@@ -189,6 +194,32 @@ public class Planet implements EventModifiableObject {
 		}
 	}
 
+	@Override
+	public Planet copy() {
+		try {
+			Planet copy = (Planet) clone();
+			copy.attributes = new ArrayList<>(attributes);
+			copy.shipyards = new ArrayList<>(shipyards);
+			copy.outfitters = new ArrayList<>(outfitters);
+			copy.tributeFleets = new HashMap<>(tributeFleets);
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * A planet counts as inhabited unless it has the "uninhabited" attribute
+	 * or is a wormhole.
+	 */
+	public boolean isInhabited() {
+		return inhabited;
+	}
+
+	private void updateInhabited() {
+		inhabited = !attributes.contains("uninhabited") && wormhole == null;
+	}
+
 	// Getters
 	public String getName() {
 		return name;
@@ -265,6 +296,7 @@ public class Planet implements EventModifiableObject {
 
 	public void addAttribute(String attribute) {
 		attributes.add(attribute);
+		updateInhabited();
 	}
 
 	public void setLandscape(Sprite landscape) {
@@ -313,6 +345,7 @@ public class Planet implements EventModifiableObject {
 
 	public void setWormhole(String wormhole) {
 		this.wormhole = wormhole;
+		updateInhabited();
 	}
 
 	public void setTributeValue(int tributeValue) {
@@ -0,0 +1,101 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lets the game directory and plugin directories be zip archives, which are
+ * read in place through a zip {@link FileSystem} rather than extracted.
+ * Each archive is opened the first time it's needed, and stays open.
+ */
+public class PluginArchive {
+	// The root of each game or plugin directory that has been looked up.
+	private static Map<String, Path> roots = new HashMap<>();
+
+	// The archive each open zip file system belongs to.
+	private static Map<FileSystem, File> archives = new HashMap<>();
+
+	public static boolean isArchive(String path) {
+		return path.toLowerCase().endsWith(".zip");
+	}
+
+	/**
+	 * Finds the directory holding a plugin's {@code data} and {@code images}
+	 * directories. For a zip archive, that's the root of the archive, or the
+	 * only directory in it if everything was zipped up inside one folder.
+	 * @param path The path of a plugin directory or zip archive.
+	 * @return The plugin's root, or null if the archive couldn't be opened.
+	 */
+	public static synchronized Path getRoot(String path) {
+		if (!isArchive(path))
+			return Paths.get(path);
+
+		if (roots.containsKey(path))
+			return roots.get(path);
+
+		Path root = null;
+		try {
+			FileSystem fileSystem = FileSystems.newFileSystem(Paths.get(path), (ClassLoader) null);
+			archives.put(fileSystem, new File(path));
+			root = fileSystem.getPath("/");
+
+			if (!Files.isDirectory(root.resolve("data")) && !Files.isDirectory(root.resolve("images"))) {
+				Path only = null;
+				try (DirectoryStream<Path> children = Files.newDirectoryStream(root)) {
+					for (Path child : children) {
+						if (only != null || !Files.isDirectory(child)) {
+							only = null;
+							break;
+						}
+						only = child;
+					}
+				}
+				if (only != null)
+					root = only;
+			}
+		} catch (IOException e) {
+			Logger.err("Could not open plugin archive %s.", path);
+		}
+
+		roots.put(path, root);
+		return root;
+	}
+
+	/**
+	 * Makes a {@link File} that names a path, for use in error messages and
+	 * for telling files apart. Paths inside an archive get a file named as
+	 * if the archive were a directory; it can't be used to read the file.
+	 */
+	public static synchronized File toFile(Path path) {
+		File archive = archives.get(path.getFileSystem());
+		if (archive == null)
+			return path.toFile();
+
+		return new File(archive, path.toString());
+	}
+
+	public static boolean isInArchive(Path path) {
+		return path.getFileSystem() != FileSystems.getDefault();
+	}
+}
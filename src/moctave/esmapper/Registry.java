@@ -0,0 +1,76 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives each name of one kind, like a commodity or a minable, a small
+ * number, so values for it can be stored in plain arrays instead of maps.
+ * Numbers are handed out in the order names are first seen, starting from
+ * zero, and never change or get reused.
+ *
+ * Registries are thread-safe.
+ */
+public class Registry {
+	public static final Registry COMMODITIES = new Registry();
+	public static final Registry HAZARDS = new Registry();
+	public static final Registry ASTEROIDS = new Registry();
+	public static final Registry MINABLES = new Registry();
+
+	private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+	private List<String> names = new ArrayList<>();
+
+	/**
+	 * @return The number for a name, which is given one if it doesn't have
+	 * one yet.
+	 */
+	public int getId(String name) {
+		Integer id = ids.get(name);
+		if (id != null)
+			return id;
+
+		synchronized (this) {
+			id = ids.get(name);
+			if (id == null) {
+				id = names.size();
+				names.add(name);
+				ids.put(name, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * @return The number for a name, or -1 if it doesn't have one.
+	 */
+	public int find(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	public synchronized String getName(int id) {
+		return names.get(id);
+	}
+
+	/**
+	 * @return How many names have a number, which is one more than the
+	 * largest number.
+	 */
+	public synchronized int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,188 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Checks whether a data file has any top-level nodes worth parsing, working
+ * on the file's raw bytes. Most lines are only looked at up to their first
+ * non-tab character, and nothing is decoded except the names of top-level
+ * nodes, so files full of ships, outfits or missions can be passed over
+ * much faster than parsing them would take.
+ *
+ * Lines are grouped into nodes exactly like {@link Parser} does, so a file
+ * is only passed over if parsing it would find no wanted top-level nodes.
+ */
+public class RootScanner {
+	// Returned when a file has wanted top-level nodes.
+	public static final int WANTED = -1;
+
+	/**
+	 * @param bytes The contents of the data file to check.
+	 * @param wanted The names of top-level nodes that are wanted.
+	 * @return How many lines the file has, if it has no wanted top-level
+	 * nodes, or {@link #WANTED} if it does.
+	 */
+	public static int countUnwantedLines(byte[] bytes, Set<String> wanted) {
+		int limit = bytes.length;
+		int position = 0;
+
+		// Only how deep the parser's stack of nodes would be matters here.
+		int depth = 0;
+		int lastTabs = 0;
+		boolean lastHadTokens = false;
+		int[] token = new int[2];
+		int lines = 0;
+
+		while (position < limit) {
+			lines++;
+			int tabs = 0;
+			while (position < limit && bytes[position] == '\t') {
+				position++;
+				tabs++;
+			}
+
+			if (tabs > lastTabs && lastHadTokens) {
+				depth++;
+			} else if (depth > tabs) {
+				depth = tabs;
+			}
+
+			// Find the first character that isn't whitespace. Like the parser,
+			// anything up to a space counts as whitespace.
+			while (position < limit && !isLineBreak(bytes[position]) && (bytes[position] & 0xFF) <= ' ') {
+				position++;
+			}
+			int first = position;
+
+			int end = first;
+			while (end < limit && !isLineBreak(bytes[end])) {
+				end++;
+			}
+			int trimmedEnd = end;
+			while (trimmedEnd > first && (bytes[trimmedEnd - 1] & 0xFF) <= ' ') {
+				trimmedEnd--;
+			}
+
+			byte c = first < trimmedEnd ? bytes[first] : 0;
+			boolean hasTokens = first < trimmedEnd
+				&& c != '#'
+				&& !((c == '"' || c == '`') && trimmedEnd - first == 1);
+
+			if (depth == 0 && hasTokens) {
+				String name = findName(bytes, first, trimmedEnd, token);
+				if (name != null && wanted.contains(name))
+					return WANTED;
+			}
+
+			lastTabs = tabs;
+			lastHadTokens = hasTokens;
+			position = end + 1;
+			if (end < limit && bytes[end] == '\r' && position < limit && bytes[position] == '\n')
+				position++;
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Finds the name of the node on a line, without splitting the rest of
+	 * the line into tokens. Only the name is decoded.
+	 * @param start Where the line's first character that isn't whitespace is.
+	 * @param end Where the line ends, with any whitespace at the end left out.
+	 * @param token Somewhere to keep where a token starts and ends.
+	 * @return The name, or null if the line has no tokens.
+	 */
+	private static String findName(byte[] bytes, int start, int end, int[] token) {
+		int next = nextToken(bytes, start, end, token);
+		if (next < 0)
+			return null;
+
+		// A flag is only a flag if there's a name after it.
+		if (isFlag(bytes, token[0], token[1])) {
+			int flagStart = token[0];
+			int flagEnd = token[1];
+			if (nextToken(bytes, next, end, token) < 0) {
+				token[0] = flagStart;
+				token[1] = flagEnd;
+			}
+		}
+
+		return new String(bytes, token[0], token[1] - token[0], StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Finds the next token on a line, splitting it the same way that
+	 * {@link Parser} does.
+	 * @param token Gets where the token starts and ends, leaving out quotes.
+	 * @return Where to look for the token after this one, or -1 if there
+	 * are no more tokens.
+	 */
+	private static int nextToken(byte[] bytes, int position, int end, int[] token) {
+		while (position < end && bytes[position] == ' ') {
+			position++;
+		}
+		if (position >= end)
+			return -1;
+
+		byte quote = bytes[position];
+		if (quote == '"' || quote == '`') {
+			// Quoted tokens end at the same quote, or at the end of the line.
+			int tokenEnd = position + 1;
+			while (tokenEnd < end && bytes[tokenEnd] != quote) {
+				tokenEnd++;
+			}
+			if (tokenEnd == end && tokenEnd == position + 1)
+				return -1;
+
+			token[0] = position + 1;
+			token[1] = tokenEnd;
+			return tokenEnd + 1;
+		}
+
+		int tokenEnd = position;
+		while (tokenEnd < end && bytes[tokenEnd] != ' ' && bytes[tokenEnd] != '#') {
+			tokenEnd++;
+		}
+		if (tokenEnd == position)
+			return -1;
+
+		token[0] = position;
+		token[1] = tokenEnd;
+
+		// Everything after a comment is ignored.
+		return tokenEnd < end && bytes[tokenEnd] == '#' ? end : tokenEnd;
+	}
+
+	private static boolean isFlag(byte[] bytes, int start, int end) {
+		return matches(bytes, start, end, "add") || matches(bytes, start, end, "remove");
+	}
+
+	private static boolean matches(byte[] bytes, int start, int end, String word) {
+		if (end - start != word.length())
+			return false;
+
+		for (int i = 0; i < word.length(); i++) {
+			if (bytes[start + i] != word.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isLineBreak(byte b) {
+		return b == '\n' || b == '\r';
+	}
+}
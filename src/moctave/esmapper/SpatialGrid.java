@@ -0,0 +1,172 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A uniform grid of square cells over a set of rectangles, which finds the
+ * rectangles that overlap an area without checking every one of them.
+ *
+ * Rectangles are numbered in the order they are added, and areas are
+ * searched for as a set of those numbers, so callers that add things in the
+ * order they are drawn can draw just the ones they find in the same order.
+ */
+public class SpatialGrid {
+	// Rectangles covering more cells than this are checked on every search instead.
+	public static final int MAX_CELLS = 4096;
+
+	/**
+	 * @param cellSize The width and height of each cell. Rectangles much
+	 * larger than this are put in many cells, and areas much larger than it
+	 * have many cells to check.
+	 */
+	public SpatialGrid(double cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	private double cellSize;
+
+	// The rectangles' bounds, four to a rectangle: min x, min y, max x, max y.
+	private double[] bounds = new double[64];
+	private int size = 0;
+
+	// The rectangles in each cell, by cell position.
+	private Map<Long, int[]> cells = new HashMap<>();
+
+	// Rectangles that would cover too many cells, which are checked on every search.
+	private int[] large = new int[1];
+
+	// The range of cells that have anything in them.
+	private int minCellX = Integer.MAX_VALUE;
+	private int minCellY = Integer.MAX_VALUE;
+	private int maxCellX = Integer.MIN_VALUE;
+	private int maxCellY = Integer.MIN_VALUE;
+
+	/**
+	 * @return The rectangle's number.
+	 */
+	public int add(double minX, double minY, double maxX, double maxY) {
+		int item = size++;
+		if (bounds.length < size * 4)
+			bounds = Arrays.copyOf(bounds, bounds.length * 2);
+
+		bounds[item * 4] = minX;
+		bounds[item * 4 + 1] = minY;
+		bounds[item * 4 + 2] = maxX;
+		bounds[item * 4 + 3] = maxY;
+
+		int startX = toCell(minX);
+		int startY = toCell(minY);
+		int endX = toCell(maxX);
+		int endY = toCell(maxY);
+		if (((long) endX - startX + 1) * ((long) endY - startY + 1) > MAX_CELLS) {
+			large = append(large, item);
+			return item;
+		}
+
+		minCellX = Math.min(minCellX, startX);
+		minCellY = Math.min(minCellY, startY);
+		maxCellX = Math.max(maxCellX, endX);
+		maxCellY = Math.max(maxCellY, endY);
+
+		for (int x = startX; x <= endX; x++) {
+			for (int y = startY; y <= endY; y++) {
+				long key = getKey(x, y);
+				cells.put(key, append(cells.get(key), item));
+			}
+		}
+
+		return item;
+	}
+
+	/**
+	 * @return The numbers of every rectangle that overlaps the area.
+	 */
+	public BitSet find(double minX, double minY, double maxX, double maxY) {
+		BitSet found = new BitSet(size);
+
+		int startX = Math.max(toCell(minX), minCellX);
+		int startY = Math.max(toCell(minY), minCellY);
+		int endX = Math.min(toCell(maxX), maxCellX);
+		int endY = Math.min(toCell(maxY), maxCellY);
+
+		// Large areas are quicker to search by going through every cell that
+		// has anything in it.
+		if (startX <= endX && startY <= endY) {
+			if (((long) endX - startX + 1) * ((long) endY - startY + 1) > cells.size()) {
+				for (int[] cell : cells.values()) {
+					findInList(cell, found, minX, minY, maxX, maxY);
+				}
+			} else {
+				for (int x = startX; x <= endX; x++) {
+					for (int y = startY; y <= endY; y++) {
+						findInList(cells.get(getKey(x, y)), found, minX, minY, maxX, maxY);
+					}
+				}
+			}
+		}
+		findInList(large, found, minX, minY, maxX, maxY);
+
+		return found;
+	}
+
+	/**
+	 * @return How many rectangles have been added.
+	 */
+	public int size() {
+		return size;
+	}
+
+	// Adds the rectangles in a list that overlap the area to the found set.
+	private void findInList(int[] list, BitSet found, double minX, double minY, double maxX, double maxY) {
+		if (list == null)
+			return;
+
+		for (int i = 1; i <= list[0]; i++) {
+			int item = list[i];
+			if (
+				!found.get(item)
+				&& bounds[item * 4] <= maxX
+				&& bounds[item * 4 + 1] <= maxY
+				&& bounds[item * 4 + 2] >= minX
+				&& bounds[item * 4 + 3] >= minY
+			) {
+				found.set(item);
+			}
+		}
+	}
+
+	// Lists of rectangles hold how many of their elements are used first.
+	private static int[] append(int[] list, int item) {
+		if (list == null) {
+			list = new int[4];
+		} else if (list[0] + 1 == list.length) {
+			list = Arrays.copyOf(list, list.length * 2);
+		}
+		list[++list[0]] = item;
+		return list;
+	}
+
+	private int toCell(double coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	private static long getKey(int x, int y) {
+		return (long) x << 32 | (y & 0xFFFFFFFFL);
+	}
+}
@@ -13,7 +13,10 @@
 
 package moctave.esmapper;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -51,35 +54,34 @@ public class Sprite {
 	 * Find an image file corresponding to this sprite.
 	 * Works by searching through plugins in reverse order and checking
 	 * files against a regular expression. Vanilla content is handled last.
-	 * @return A {@link File} object that matches this sprite's name.
+	 * Plugins that are zip archives are searched without extracting them.
+	 * @return A {@link Path} to an image that matches this sprite's name.
 	 */
-	public File resolve() {
+	public Path resolve() {
 		List<String> paths = new ArrayList<>(Main.getPlugins());
 		Collections.reverse(paths);
 		paths.add(Main.getGameDir());
 
 		for (String path : paths) {
-			String dir = path;
-			if (!dir.endsWith("/"))
-				dir += "/";
+			Path root = PluginArchive.getRoot(path);
+			if (root == null)
+				continue;
 
-			dir += "images/";
-
-			File base = new File(dir + name);
 			try {
+				Path base = root.resolve("images").resolve(name);
 				Pattern pattern = Pattern.compile(
-					base.getName().split("\\.")[0].replace("/", "\\/")
+					base.getFileName().toString().split("\\.")[0].replace("/", "\\/")
 					+ "[\\+\\-\\~]?\\.\\S+",
 					Pattern.CASE_INSENSITIVE
 				);
-				for (File f : base.getParentFile().listFiles()) {
-					if (pattern.matcher(f.getName()).find()) {
-						if (f.exists()) {
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(base.getParent())) {
+					for (Path f : files) {
+						if (pattern.matcher(f.getFileName().toString()).find()) {
 							return f;
 						}
 					}
 				}
-			} catch (NullPointerException e) {
+			} catch (NullPointerException | IOException e) {
 				// Plugin is likely missing an images directory,
 				// nothing to be concerned about.
 			}
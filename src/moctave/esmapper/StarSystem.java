@@ -14,11 +14,10 @@
 package moctave.esmapper;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
-public class StarSystem implements EventModifiableObject {
+public class StarSystem implements EventModifiableObject, Cloneable {
 	public static final String TYPE = "system";
 	public StarSystem(Node node) {
 
@@ -89,13 +88,13 @@ public class StarSystem implements EventModifiableObject {
 					setDepartureDistanceJump(Builder.asDouble(child, TYPE));
 				}
 			} else if (child.getName().equals("trade")) {
-				Builder.mapDouble(child, commodities, TYPE);
+				Builder.putDoubles(child, commodities, TYPE);
 			} else if (child.getName().equals("hazard")) {
-				Builder.mapDouble(child, hazards, TYPE);
+				Builder.putDoubles(child, hazards, TYPE);
 			} else if (child.getName().equals("asteroid")) {
-				Builder.mapDoubleArray(child, asteroids, TYPE);
+				Builder.putDoubles(child, asteroids, TYPE);
 			} else if (child.getName().equals("minables")) {
-				Builder.mapDoubleArray(child, minables, TYPE);
+				Builder.putDoubles(child, minables, TYPE);
 			}
 		}
 	}
@@ -130,19 +129,23 @@ public class StarSystem implements EventModifiableObject {
 
 	private List<String> hyperlinks = new ArrayList<>();
 
-	private Map<String, Double[]> asteroids = new HashMap<>();
-	private Map<String, Double[]> minables = new HashMap<>();
+	// Asteroids and minables have a count and an energy.
+	private IndexedValues asteroids = new IndexedValues(Registry.ASTEROIDS, 2);
+	private IndexedValues minables = new IndexedValues(Registry.MINABLES, 2);
 
-	private Map<String, Double> commodities = new HashMap<>();
+	private IndexedValues commodities = new IndexedValues(Registry.COMMODITIES, 1);
 
 	//private Map<String, Double> roamingFleets = new HashMap<>();
 	//private Map<String, Double[]> raidingFleets = new HashMap<>();
 
-	private Map<String, Double> hazards = new HashMap<>();
+	private IndexedValues hazards = new IndexedValues(Registry.HAZARDS, 1);
 	private double starfieldDensity = 1;
 
 	private List<StellarObject> objects = new ArrayList<>();
 
+	// Every named object, or null if it needs to be worked out again.
+	private volatile List<StellarObject> namedObjects = null;
+
 	@Override
 	public void applyModifiers(Node node) {
 		for (Node child : node.getChildren()) {
@@ -168,6 +171,7 @@ public class StarSystem implements EventModifiableObject {
 					addObject(new StellarObject(child));
 				} else {
 					objects = new ArrayList<>();
+					namedObjects = null;
 					if (child.getFlag() != Node.REMOVE) {
 						addObject(new StellarObject(child));
 					}
@@ -195,17 +199,34 @@ public class StarSystem implements EventModifiableObject {
 			} else if (child.getName().equals("starfield density")) {
 				setStarfieldDensity(Builder.asDouble(child, TYPE));
 			} else if (child.getName().equals("trade")) {
-				Builder.mapDouble(child, commodities, TYPE);
+				Builder.putDoubles(child, commodities, TYPE);
 			} else if (child.getName().equals("hazard")) {
-				Builder.mapDouble(child, hazards, TYPE);
+				Builder.putDoubles(child, hazards, TYPE);
 			} else if (child.getName().equals("asteroid")) {
-				Builder.mapDoubleArray(child, asteroids, TYPE);
+				Builder.putDoubles(child, asteroids, TYPE);
 			} else if (child.getName().equals("minables")) {
-				Builder.mapDoubleArray(child, minables, TYPE);
+				Builder.putDoubles(child, minables, TYPE);
 			}
 		}
 	}
 
+	@Override
+	public StarSystem copy() {
+		try {
+			StarSystem copy = (StarSystem) clone();
+			copy.attributes = new ArrayList<>(attributes);
+			copy.hyperlinks = new ArrayList<>(hyperlinks);
+			copy.asteroids = asteroids.copy();
+			copy.minables = minables.copy();
+			copy.commodities = commodities.copy();
+			copy.hazards = hazards.copy();
+			copy.objects = new ArrayList<>(objects);
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
 	public String toString() {
 		String attributeSummary = "";
 
@@ -241,18 +262,8 @@ public class StarSystem implements EventModifiableObject {
 	 * @return Whether or not this system is marked as uninhabited.
 	 */
 	public boolean isUninhabited(GalacticMap map) {
-		List<StellarObject> namedObjects = getAllNamedObjects();
-		if (namedObjects.size() == 0) {
-			return true;
-		}
-		
-		for (StellarObject obj : namedObjects) {
-			Planet planet = map.getPlanet(obj.getName());
-
-			if (
-				!planet.getAttributes().contains("uninhabited")
-				&& planet.getWormhole() == null
-			) {
+		for (Planet planet : map.getNamedPlanets(this)) {
+			if (planet.isInhabited()) {
 				return false;
 			}
 		}
@@ -260,26 +271,30 @@ public class StarSystem implements EventModifiableObject {
 		return true;
 	}
 
+	/**
+	 * @return Every named object in the system, including the children of
+	 * other objects, from the outermost inwards. The list is worked out the
+	 * first time it's needed and kept until the system's objects change.
+	 */
 	public List<StellarObject> getAllNamedObjects() {
+		List<StellarObject> namedObjects = this.namedObjects;
+		if (namedObjects != null)
+			return namedObjects;
+
+		List<StellarObject> found = new ArrayList<>();
 		List<StellarObject> uncheckedObjects = new ArrayList<>(getObjects());
-		List<StellarObject> namedObjects = new ArrayList<>();
-		
-		while (uncheckedObjects.size() > 0) {
-			StellarObject obj = uncheckedObjects.get(0);
+		for (int i = 0; i < uncheckedObjects.size(); i++) {
+			StellarObject obj = uncheckedObjects.get(i);
 
 			if (obj.isNamed()) {
-				namedObjects.add(obj);
-			}
-	
-			if (obj.hasNamedChildren()) {
-				for (StellarObject child : obj.getChildren()) {
-					uncheckedObjects.add(child);
-				}
+				found.add(obj);
 			}
 
-			uncheckedObjects.remove(0);
+			uncheckedObjects.addAll(obj.getChildren());
 		}
 
+		namedObjects = Collections.unmodifiableList(found);
+		this.namedObjects = namedObjects;
 		return namedObjects;
 	}
 
@@ -365,52 +380,52 @@ public class StarSystem implements EventModifiableObject {
 	}
 
 	public double getCommodityPrice(String commodity) {
-		try {
-			return commodities.get(commodity);
-		} catch (NullPointerException e) {
+		int id = Registry.COMMODITIES.find(commodity);
+		if (id < 0) {
 			Logger.warn("No price for commodity %s in system %s.", commodity, name);
 			return 0;
 		}
+
+		return getCommodityPrice(id);
 	}
 
-	public Double[] getAsteroidData(String asteroid) {
-		return asteroids.get(asteroid);
+	/**
+	 * @param commodity The commodity's number in {@link Registry#COMMODITIES}.
+	 */
+	public double getCommodityPrice(int commodity) {
+		if (!commodities.has(commodity)) {
+			Logger.warn(
+				"No price for commodity %s in system %s.",
+				commodity < 0 || commodity >= Registry.COMMODITIES.size() ? "(unknown)" : Registry.COMMODITIES.getName(commodity),
+				name
+			);
+			return 0;
+		}
+
+		return commodities.get(commodity, 0);
 	}
 
 	public double getAsteroidCount(String asteroid) {
-		Double[] arr = asteroids.get(asteroid);
-		if (arr == null)
-			return 0;
-		
-		return arr[0];
+		return asteroids.get(Registry.ASTEROIDS.find(asteroid), 0);
 	}
 
 	public double getAsteroidEnergy(String asteroid) {
-		Double[] arr = asteroids.get(asteroid);
-		if (arr == null)
-			return 0;
-		
-		return arr[1];
+		return asteroids.get(Registry.ASTEROIDS.find(asteroid), 1);
 	}
 
-	public Double[] getMinableData(String minable) {
-		return minables.get(minable);
+	public double getMinableCount(String minable) {
+		return getMinableCount(Registry.MINABLES.find(minable));
 	}
 
-	public double getMinableCount(String minable) {
-		Double[] arr = minables.get(minable);
-		if (arr == null)
-			return 0;
-		
-		return arr[0];
+	/**
+	 * @param minable The minable's number in {@link Registry#MINABLES}.
+	 */
+	public double getMinableCount(int minable) {
+		return minables.get(minable, 0);
 	}
 
 	public double getMinableEnergy(String minable) {
-		Double[] arr = minables.get(minable);
-		if (arr == null)
-			return 0;
-		
-		return arr[1];
+		return minables.get(Registry.MINABLES.find(minable), 1);
 	}
 
 
@@ -493,5 +508,6 @@ public class StarSystem implements EventModifiableObject {
 
 	public void addObject(StellarObject object) {
 		objects.add(object);
+		namedObjects = null;
 	}
 }
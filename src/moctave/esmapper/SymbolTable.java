@@ -0,0 +1,98 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Makes sure that node names and short arguments which appear many times in
+ * the data only exist once in memory.
+ *
+ * Symbols are shared between every file through a global table. Canonical
+ * symbols are the same objects as the string constants in the code, so when
+ * a node name is compared to a keyword with {@code equals}, a match is found
+ * by the identity check without ever comparing characters.
+ *
+ * Each parser also gets its own small cache, which can look up a token
+ * straight out of a line buffer, so repeated tokens don't need a new string
+ * at all. Caches are not thread-safe, but the global table is.
+ */
+public class SymbolTable {
+	// Tokens longer than this are usually descriptions, which are rarely repeated.
+	public static final int MAX_LENGTH = 64;
+
+	private static final int CACHE_SIZE = 1024;
+
+	private static final ConcurrentHashMap<String, String> SYMBOLS = new ConcurrentHashMap<>();
+
+	// Recently seen symbols, indexed by the low bits of their hash codes.
+	private String[] cache = new String[CACHE_SIZE];
+
+	/**
+	 * Finds the canonical copy of a string, or makes this string canonical
+	 * if it's the first of its kind.
+	 */
+	public static String intern(String string) {
+		if (string.length() > MAX_LENGTH)
+			return string;
+
+		String symbol = SYMBOLS.get(string);
+		if (symbol == null) {
+			symbol = string.intern();
+			String existing = SYMBOLS.putIfAbsent(symbol, symbol);
+			if (existing != null)
+				symbol = existing;
+		}
+		return symbol;
+	}
+
+	/**
+	 * Finds the canonical string for part of a buffer. A new string is only
+	 * created if this cache hasn't seen the symbol recently.
+	 * @param buffer The buffer holding the token.
+	 * @param start The index of the token's first character.
+	 * @param end The index after the token's last character.
+	 */
+	public String get(char[] buffer, int start, int end) {
+		int length = end - start;
+		if (length > MAX_LENGTH)
+			return new String(buffer, start, length);
+
+		// Same as String.hashCode(), so cached strings can be compared quickly.
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + buffer[i];
+		}
+
+		int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+		String cached = cache[slot];
+		if (cached != null && cached.hashCode() == hash && matches(cached, buffer, start, length))
+			return cached;
+
+		String symbol = intern(new String(buffer, start, length));
+		cache[slot] = symbol;
+		return symbol;
+	}
+
+	private static boolean matches(String string, char[] buffer, int start, int length) {
+		if (string.length() != length)
+			return false;
+
+		for (int i = 0; i < length; i++) {
+			if (string.charAt(i) != buffer[start + i])
+				return false;
+		}
+		return true;
+	}
+}
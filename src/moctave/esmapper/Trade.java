@@ -13,13 +13,11 @@
 
 package moctave.esmapper;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public abstract class Trade {
 	public static final String TYPE = "trade";
 
-	private static Map<String, Double[]> commodities = new HashMap<>();
+	// The lowest and highest price of each commodity.
+	private static IndexedValues commodities = new IndexedValues(Registry.COMMODITIES, 2);
 
 	public static void addTradeInfo(Node node) {
 		// The trade node has no name
@@ -27,28 +25,34 @@ public abstract class Trade {
 		for (Node child : node.getChildren()) {
 
 			if (child.getName().equals("commodity")) {
-				Builder.mapDoubleArray(child, commodities, TYPE);
+				Builder.putDoubles(child, commodities, TYPE);
 			}
 		}
 	}
 
-	public static Double[] getCommodityData(String commodity) {
-		return commodities.get(commodity);
+	public static void clear() {
+		commodities.clear();
 	}
 
 	public static double getMinCommodityPrice(String commodity) {
-		Double[] arr = commodities.get(commodity);
-		if (arr == null)
-			return 0;
-		
-		return arr[0];
+		return getMinCommodityPrice(Registry.COMMODITIES.find(commodity));
+	}
+
+	/**
+	 * @param commodity The commodity's number in {@link Registry#COMMODITIES}.
+	 */
+	public static double getMinCommodityPrice(int commodity) {
+		return commodities.get(commodity, 0);
 	}
 
 	public static double getMaxCommodityPrice(String commodity) {
-		Double[] arr = commodities.get(commodity);
-		if (arr == null)
-			return 0;
-		
-		return arr[1];
+		return getMaxCommodityPrice(Registry.COMMODITIES.find(commodity));
+	}
+
+	/**
+	 * @param commodity The commodity's number in {@link Registry#COMMODITIES}.
+	 */
+	public static double getMaxCommodityPrice(int commodity) {
+		return commodities.get(commodity, 1);
 	}
 }
@@ -0,0 +1,318 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Every system, galaxy, government, wormhole and planet in the data files,
+ * built once and shared by every map that draws the same data.
+ *
+ * Nothing in a universe may be changed once it has been built. Maps see it
+ * through {@link Layer}s, which give a map its own copy of an object the
+ * first time one of its events needs to change it.
+ *
+ * A universe also keeps {@link Snapshot}s of the objects changed by the
+ * first few events of a map, if other maps start with the same events, so
+ * that those maps only need to apply the rest of their events.
+ */
+public class Universe {
+	/**
+	 * Builds every object from the data files. If an object is defined more
+	 * than once, the last definition wins, but it keeps the position of the
+	 * first.
+	 * @param pluginsOnly Whether to leave out the game directory's objects.
+	 * @param eventLists The events applied by each map that will use this universe.
+	 */
+	public Universe(NodeIndex index, boolean pluginsOnly, Collection<List<String>> eventLists) {
+		findSharedPrefixes(eventLists);
+
+		for (Node node : index.get("system", pluginsOnly)) {
+			StarSystem system = new StarSystem(node);
+			systems.put(system.getName(), system);
+		}
+		for (Node node : index.get("galaxy", pluginsOnly)) {
+			Galaxy galaxy = new Galaxy(node);
+			galaxies.put(galaxy.getName(), galaxy);
+		}
+		for (Node node : index.get("government", pluginsOnly)) {
+			Government government = new Government(node);
+			governments.put(government.getName(), government);
+		}
+		for (Node node : index.get("wormhole", pluginsOnly)) {
+			Wormhole wormhole = new Wormhole(node);
+			wormholes.put(wormhole.getName(), wormhole);
+		}
+		for (Node node : index.get("planet", pluginsOnly)) {
+			Planet planet = new Planet(node);
+			planets.put(planet.getName(), planet);
+		}
+	}
+
+	private Map<String, StarSystem> systems = new LinkedHashMap<>();
+	private Map<String, Galaxy> galaxies = new LinkedHashMap<>();
+	private Map<String, Government> governments = new LinkedHashMap<>();
+	private Map<String, Wormhole> wormholes = new LinkedHashMap<>();
+	private Map<String, Planet> planets = new LinkedHashMap<>();
+
+	// Lists of events that more than one map starts with.
+	private Set<List<String>> sharedPrefixes = new HashSet<>();
+
+	// Saved snapshots by the events that led to them, least recently used first.
+	private Map<List<String>, Snapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+	// How many changed objects the snapshots hold between them.
+	private int snapshotSize = 0;
+
+	public Map<String, StarSystem> getSystems() {
+		return Collections.unmodifiableMap(systems);
+	}
+
+	public Map<String, Galaxy> getGalaxies() {
+		return Collections.unmodifiableMap(galaxies);
+	}
+
+	public Map<String, Government> getGovernments() {
+		return Collections.unmodifiableMap(governments);
+	}
+
+	public Map<String, Wormhole> getWormholes() {
+		return Collections.unmodifiableMap(wormholes);
+	}
+
+	public Map<String, Planet> getPlanets() {
+		return Collections.unmodifiableMap(planets);
+	}
+
+	private void findSharedPrefixes(Collection<List<String>> eventLists) {
+		List<List<String>> lists = new ArrayList<>(eventLists);
+		for (int i = 0; i < lists.size(); i++) {
+			for (int j = i + 1; j < lists.size(); j++) {
+				List<String> a = lists.get(i);
+				List<String> b = lists.get(j);
+				int length = 0;
+				while (length < a.size() && length < b.size() && a.get(length).equals(b.get(length))) {
+					length++;
+				}
+
+				if (length > 0)
+					sharedPrefixes.add(new ArrayList<>(a.subList(0, length)));
+			}
+		}
+	}
+
+	/**
+	 * @return Whether a map that has just applied these events should save a
+	 * snapshot, because another map starts with the same events.
+	 */
+	public boolean isSharedPrefix(List<String> events) {
+		return sharedPrefixes.contains(events);
+	}
+
+	/**
+	 * Finds the snapshot for the longest list of events that a map starts
+	 * with, if any of them have been saved.
+	 * @return The snapshot, or an empty one if no events have been saved.
+	 */
+	public synchronized Snapshot findSnapshot(List<String> events) {
+		for (int count = events.size(); count > 0; count--) {
+			Snapshot snapshot = snapshots.get(events.subList(0, count));
+			if (snapshot != null)
+				return snapshot;
+		}
+
+		return new Snapshot(
+			new ArrayList<>(),
+			new HashMap<>(),
+			new HashMap<>(),
+			new HashMap<>(),
+			new HashMap<>(),
+			new HashMap<>()
+		);
+	}
+
+	/**
+	 * Saves a snapshot, then forgets the least recently used snapshots until
+	 * they fit in {@link Main#getEventCacheSize()}.
+	 */
+	public synchronized void addSnapshot(Snapshot snapshot) {
+		int limit = Main.getEventCacheSize();
+		if (snapshot.size() > limit || snapshots.containsKey(snapshot.getEvents()))
+			return;
+
+		snapshots.put(snapshot.getEvents(), snapshot);
+		snapshotSize += snapshot.size();
+
+		Iterator<Snapshot> iterator = snapshots.values().iterator();
+		while (snapshotSize > limit) {
+			snapshotSize -= iterator.next().size();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * The objects that a list of events changed, as copies of the objects in
+	 * the universe. None of them may be changed.
+	 */
+	public static class Snapshot {
+		public Snapshot(
+			List<String> events,
+			Map<String, StarSystem> systems,
+			Map<String, Galaxy> galaxies,
+			Map<String, Government> governments,
+			Map<String, Wormhole> wormholes,
+			Map<String, Planet> planets
+		) {
+			this.events = events;
+			this.systems = systems;
+			this.galaxies = galaxies;
+			this.governments = governments;
+			this.wormholes = wormholes;
+			this.planets = planets;
+		}
+
+		private List<String> events;
+		private Map<String, StarSystem> systems;
+		private Map<String, Galaxy> galaxies;
+		private Map<String, Government> governments;
+		private Map<String, Wormhole> wormholes;
+		private Map<String, Planet> planets;
+
+		public List<String> getEvents() {
+			return events;
+		}
+
+		public Map<String, StarSystem> getSystems() {
+			return systems;
+		}
+
+		public Map<String, Galaxy> getGalaxies() {
+			return galaxies;
+		}
+
+		public Map<String, Government> getGovernments() {
+			return governments;
+		}
+
+		public Map<String, Wormhole> getWormholes() {
+			return wormholes;
+		}
+
+		public Map<String, Planet> getPlanets() {
+			return planets;
+		}
+
+		/**
+		 * @return How many changed objects the snapshot holds.
+		 */
+		public int size() {
+			return systems.size() + galaxies.size() + governments.size() + wormholes.size() + planets.size();
+		}
+	}
+
+	/**
+	 * One map's view of one kind of object in a universe. Objects are read
+	 * straight from the universe, or from the snapshot the map started
+	 * from, until they are asked for with {@link #getModifiable}, after
+	 * which the map sees its own copy instead.
+	 */
+	public static class Layer<T extends EventModifiableObject> {
+		/**
+		 * @param base The universe's objects.
+		 * @param inherited The objects from a snapshot, which take the place
+		 * of the universe's objects with the same names.
+		 */
+		public Layer(Map<String, T> base, Map<String, T> inherited) {
+			this.base = base;
+			this.inherited = inherited;
+		}
+
+		private Map<String, T> base;
+		private Map<String, T> inherited;
+
+		// The objects this map has changed, by name.
+		private Map<String, T> copies = new HashMap<>();
+
+		/**
+		 * @return The object with the given name, which must not be changed,
+		 * or null if there isn't one.
+		 */
+		public T get(String name) {
+			T copy = copies.get(name);
+			if (copy != null)
+				return copy;
+
+			copy = inherited.get(name);
+			return copy == null ? base.get(name) : copy;
+		}
+
+		/**
+		 * @return This map's own copy of the object with the given name, or
+		 * null if there isn't one.
+		 */
+		@SuppressWarnings("unchecked")
+		public T getModifiable(String name) {
+			T copy = copies.get(name);
+			if (copy == null) {
+				T original = get(name);
+				if (original == null)
+					return null;
+
+				copy = (T) original.copy();
+				copies.put(name, copy);
+			}
+			return copy;
+		}
+
+		/**
+		 * @return Every object, in the order they are in the universe.
+		 */
+		public List<T> values() {
+			List<T> values = new ArrayList<>(base.size());
+			for (String name : base.keySet()) {
+				values.add(get(name));
+			}
+			return values;
+		}
+
+		/**
+		 * Stops any of this map's copies from being changed again, so they
+		 * can go in a snapshot. If the map changes one of them later, it
+		 * gets a new copy.
+		 * @return Every object this map has changed so far.
+		 */
+		public Map<String, T> freeze() {
+			if (!copies.isEmpty()) {
+				Map<String, T> frozen = new HashMap<>(inherited);
+				frozen.putAll(copies);
+				inherited = frozen;
+				copies = new HashMap<>();
+			}
+			return inherited;
+		}
+
+		public int size() {
+			return base.size();
+		}
+	}
+}
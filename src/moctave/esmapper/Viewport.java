@@ -54,6 +54,12 @@ public class Viewport extends DrawnItem {
 		return "viewport";
 	}
 
+	@Override
+	public void reset() {
+		setupGraphics();
+		fillCanvas(Color.BLACK);
+	}
+
 	// Viewports don't need any custom data to be loaded.
 	@Override
 	public void load() {}
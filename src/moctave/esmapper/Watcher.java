@@ -0,0 +1,155 @@
+// Copyright (c) 2024 by mOctave
+//
+// This program is free software: you can redistribute it and/or modify it under the
+// terms of the GNU Affero General Public License as published by the Free Software
+// Foundation, either version 3 of the License, or (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful, but WITHOUT ANY
+// WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+// PARTICULAR PURPOSE. See the GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License along with
+// this program. If not, see <https://www.gnu.org/licenses/>.
+
+package moctave.esmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the data directories for changes, and hands any data files that
+ * were created, modified or deleted to {@link Main#updateDataFiles(Set)}.
+ */
+public class Watcher {
+	public Watcher(List<File> directories) {
+		this.directories = directories;
+	}
+
+	/**
+	 * How long to wait for more changes before redrawing, in milliseconds.
+	 * Editors often save a file in several steps, and there's no point in
+	 * redrawing after each one.
+	 */
+	public static final long SETTLE_TIME = 250;
+
+	private List<File> directories;
+
+	private WatchService service;
+	private Map<WatchKey, Path> keys = new HashMap<>();
+
+	/**
+	 * Watches for changes until the program is stopped.
+	 */
+	public void run() {
+		try {
+			service = FileSystems.getDefault().newWatchService();
+			for (File directory : directories) {
+				if (directory.isDirectory())
+					register(directory.toPath(), null);
+			}
+		} catch (IOException e) {
+			Logger.err("Could not watch data directories for changes.");
+			e.printStackTrace();
+			return;
+		}
+
+		Logger.notify("Watching %d directories for changes. Press Ctrl+C to stop.", keys.size());
+
+		while (true) {
+			Set<File> changed = new LinkedHashSet<>();
+			try {
+				WatchKey key = service.take();
+				while (key != null) {
+					handle(key, changed);
+					key = service.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			if (!changed.isEmpty())
+				Main.updateDataFiles(changed);
+		}
+	}
+
+	/**
+	 * Starts watching a directory and everything inside it.
+	 * @param found If not null, any data files already in the directory are
+	 * added to this set.
+	 */
+	private void register(Path directory, Set<File> found) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				if (Files.isDirectory(path)) {
+					WatchKey key = path.register(
+						service,
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY,
+						StandardWatchEventKinds.ENTRY_DELETE
+					);
+					keys.put(key, path);
+				} else if (found != null && isDataFile(path)) {
+					found.add(path.toFile());
+				}
+			}
+		}
+	}
+
+	private void handle(WatchKey key, Set<File> changed) {
+		Path directory = keys.get(key);
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// Too much happened at once to keep track of, so check everything.
+				Logger.warn("Lost track of some changes, reloading all data files.");
+				changed.addAll(Main.getDataFiles());
+				for (File dir : directories) {
+					// Plugin archives aren't watched.
+					if (!dir.isDirectory())
+						continue;
+
+					List<File> files = new ArrayList<>();
+					Main.examineFile(dir, files);
+					changed.addAll(files);
+				}
+				continue;
+			}
+
+			if (directory == null)
+				continue;
+
+			Path path = directory.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+				try {
+					register(path, changed);
+				} catch (IOException e) {
+					Logger.warn("Could not watch new directory %s.", path);
+				}
+			} else if (isDataFile(path)) {
+				changed.add(path.toFile());
+			}
+		}
+
+		if (!key.reset())
+			keys.remove(key);
+	}
+
+	private static boolean isDataFile(Path path) {
+		return path.getFileName().toString().endsWith(".txt");
+	}
+}
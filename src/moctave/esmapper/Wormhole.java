@@ -18,7 +18,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Wormhole implements EventModifiableObject {
+public class Wormhole implements EventModifiableObject, Cloneable {
 	public static final String TYPE = "wormhole";
 	public Wormhole(Node node) {
 
@@ -83,6 +83,17 @@ public class Wormhole implements EventModifiableObject {
 		}
 	}
 
+	@Override
+	public Wormhole copy() {
+		try {
+			Wormhole copy = (Wormhole) clone();
+			copy.links = new HashMap<>(links);
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
 	public String getName() {
 		return name;
 	}